@@ -0,0 +1,244 @@
+package org.topbraid.mauiserver;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.topbraid.mauiserver.framework.JsonLinesParser;
+import org.topbraid.mauiserver.framework.Request;
+import org.topbraid.mauiserver.framework.Resource;
+import org.topbraid.mauiserver.framework.Resource.Gettable;
+import org.topbraid.mauiserver.framework.Resource.Guarded;
+import org.topbraid.mauiserver.framework.Resource.Postable;
+import org.topbraid.mauiserver.framework.Response;
+import org.topbraid.mauiserver.framework.ServiceUnavailableException;
+import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.framework.Response.LineWriter;
+import org.topbraid.mauiserver.tagger.Bulkhead;
+import org.topbraid.mauiserver.tagger.Deadline;
+import org.topbraid.mauiserver.tagger.RecommendationResult;
+import org.topbraid.mauiserver.tagger.Tagger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import jakarta.servlet.ServletContext;
+
+/**
+ * Tag suggestions for many documents in a single request. The request
+ * body is in JSON Lines format, one document per line. Documents are
+ * processed on the shared pool of bulk worker threads, and the results are
+ * streamed back in JSON Lines format, in input order, while later
+ * documents are still being read. The last line is a summary.
+ * <p>
+ * Each document takes its own place in the bulk lane of the tagger's
+ * {@link Bulkhead} while it is processed, so a batch never runs more
+ * documents at once than the lane allows, and a batch does not hold
+ * places while it is waiting for input or for the client.
+ */
+public class BatchSuggestResource extends Resource implements Gettable, Postable, Guarded {
+	private final static Logger log = LoggerFactory.getLogger(BatchSuggestResource.class);
+
+	/**
+	 * Longest wait for a place in the bulkhead if documents have no deadline
+	 */
+	private final static long maxQueueMillis = 60000;
+
+	private final Tagger tagger;
+	private final ExecutorService executor;
+	private final int maxPendingDocuments;
+
+	public BatchSuggestResource(ServletContext context, Tagger tagger, ExecutorService executor, int maxPendingDocuments) {
+		super(context);
+		this.tagger = tagger;
+		this.executor = executor;
+		this.maxPendingDocuments = maxPendingDocuments;
+	}
+
+	@Override
+	public String getURL() {
+		return getContextPath() + getRelativeBatchSuggesterURL(tagger);
+	}
+
+	/**
+	 * A batch is rejected up front if the bulk lane of the tagger's
+	 * bulkhead is full. Its documents enter the bulkhead one by one.
+	 */
+	@Override
+	public Admission admit(Request request) throws ServiceUnavailableException {
+		if (!"POST".equals(request.getMethod())) return null;
+		SuggestResource.checkBulkhead(tagger, Bulkhead.Lane.BULK);
+		return null;
+	}
+
+	@Override
+	public Response doGet(Request request) {
+		JSONResponse r = request.okJSON();
+		r.getRoot().put("title", "Batch Tag Suggestion Service for Tagger: " + tagger.getId());
+		r.getRoot().put("usage", "POST documents in JSON Lines format, with keys 'id' and 'text', to get tag suggestions");
+		r.getRoot().put("is_ready", tagger.isTrained());
+		return r;
+	}
+
+	@Override
+	public Response doPost(Request request) {
+		if (!tagger.isTrained()) {
+			return request.badRequest(
+					"Tagger must be trained before Tag Suggestion Service can be used");
+		}
+		try {
+			// The timeout applies to each document
+			SuggestResource.getRequestedDeadline(request);
+		} catch (MauiServerException ex) {
+			return request.badRequest(ex.getMessage());
+		}
+		final JsonLinesParser in = request.getBodyJsonLines(true);
+		if (in == null) {
+			return request.badRequest("Documents in JSON Lines format must be sent in request body");
+		}
+		return request.okJSONLines(out -> processBatch(request, in, out));
+	}
+
+	private void processBatch(Request request, JsonLinesParser in, LineWriter out) throws IOException {
+		long startTime = System.currentTimeMillis();
+		Deque<PendingDocument> pending = new ArrayDeque<PendingDocument>();
+		BatchSummary summary = new BatchSummary();
+		try {
+			while (in.hasNext()) {
+				final JsonNode doc = in.next();
+				final int line = in.getLineNumber();
+				final Deadline deadline = getDocumentDeadline(request);
+				Bulkhead.Ticket ticket = tagger.getBulkhead().enter(Bulkhead.Lane.BULK,
+						deadline.isLimited() ? deadline : Deadline.afterMillis(maxQueueMillis));
+				if (ticket == null) {
+					log.warn("Aborting batch for tagger " + tagger.getId() + ": bulk lane is full");
+					summary.error = SuggestResource.getBusyMessage(tagger, Bulkhead.Lane.BULK);
+					break;
+				}
+				FutureTask<ObjectNode> task = new FutureTask<ObjectNode>(() -> suggest(doc, line, deadline)) {
+					@Override
+					protected void done() {
+						ticket.exit();
+					}
+				};
+				pending.add(new PendingDocument(task, deadline));
+				executor.execute(task);
+				if (pending.size() >= maxPendingDocuments) {
+					writeResult(pending.removeFirst().result, out, summary);
+				}
+			}
+			while (!pending.isEmpty()) {
+				writeResult(pending.removeFirst().result, out, summary);
+			}
+		} catch (MauiServerException ex) {
+			// Input could not be read; report what we have so far
+			log.warn("Aborting batch for tagger " + tagger.getId() + ": " + ex.getMessage());
+			summary.error = ex.getMessage();
+		} catch (IOException ex) {
+			// The client went away; queued documents are skipped
+			for (PendingDocument document: pending) {
+				document.deadline.cancel();
+			}
+			throw ex;
+		} finally {
+			for (PendingDocument document: pending) {
+				document.result.cancel(true);
+			}
+		}
+		ObjectNode stats = JsonNodeFactory.instance.objectNode();
+		stats.put("documents", summary.documents);
+		stats.put("failed", summary.failed);
+		stats.put("skipped", in.getSkippedBadLinesCount());
+		stats.put("runtime_millis", System.currentTimeMillis() - startTime);
+		if (summary.error != null) {
+			stats.put("error", summary.error);
+		}
+		ObjectNode lastLine = JsonNodeFactory.instance.objectNode();
+		lastLine.set("summary", stats);
+		out.write(lastLine);
+		log.info("Batch of " + summary.documents + " documents for tagger " + tagger.getId() +
+				" processed, " + summary.failed + " failed");
+	}
+
+	private void writeResult(Future<ObjectNode> future, LineWriter out, BatchSummary summary) throws IOException {
+		ObjectNode result;
+		try {
+			result = future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new MauiServerException("Interrupted while waiting for batch results", ex);
+		} catch (ExecutionException ex) {
+			// suggest() catches its own exceptions, so this is unexpected
+			result = JsonNodeFactory.instance.objectNode();
+			result.put("error", String.valueOf(ex.getCause().getMessage()));
+		}
+		summary.documents++;
+		if (result.has("error")) {
+			summary.failed++;
+		}
+		out.write(result);
+	}
+
+	private Deadline getDocumentDeadline(Request request) {
+		Deadline requested = SuggestResource.getRequestedDeadline(request);
+		return requested != null ? requested : SuggestResource.getDefaultDeadline(tagger.getConfiguration());
+	}
+
+	private ObjectNode suggest(JsonNode doc, int line, Deadline deadline) {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		String id = "doc-" + line;
+		if (!doc.isObject()) {
+			result.put("id", id);
+			result.put("error", "Not a JSON object");
+			return result;
+		}
+		if (doc.has("id") && !"".equals(doc.get("id").asText())) {
+			id = doc.get("id").asText();
+		}
+		result.put("id", id);
+		String text = doc.has("text") ? doc.get("text").asText() :
+			doc.has("content") ? doc.get("content").asText() : null;
+		if (text == null || text.trim().isEmpty()) {
+			result.put("error", "Field 'text' missing or empty");
+			return result;
+		}
+		try {
+			RecommendationResult recommendation = tagger.recommendTags(text, null, deadline);
+			if (recommendation == null) {
+				result.put("error", "Tagger is not ready");
+				return result;
+			}
+			recommendation.toJSON(result);
+		} catch (MauiServerException ex) {
+			result.put("error", ex.getMessage());
+		}
+		return result;
+	}
+
+	public static String getRelativeBatchSuggesterURL(Tagger tagger) {
+		return SuggestResource.getRelativeSuggesterURL(tagger) + "/batch";
+	}
+
+	private static class PendingDocument {
+		final Future<ObjectNode> result;
+		final Deadline deadline;
+
+		PendingDocument(Future<ObjectNode> result, Deadline deadline) {
+			this.result = result;
+			this.deadline = deadline;
+		}
+	}
+
+	private static class BatchSummary {
+		int documents = 0;
+		int failed = 0;
+		String error = null;
+	}
+}
@@ -0,0 +1,78 @@
+package org.topbraid.mauiserver;
+
+import org.topbraid.mauiserver.framework.Request;
+import org.topbraid.mauiserver.framework.Resource;
+import org.topbraid.mauiserver.framework.Resource.Deletable;
+import org.topbraid.mauiserver.framework.Resource.Gettable;
+import org.topbraid.mauiserver.framework.Resource.Postable;
+import org.topbraid.mauiserver.framework.Response;
+import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.tagger.ShadowEvaluation;
+import org.topbraid.mauiserver.tagger.Tagger;
+import org.topbraid.mauiserver.tagger.TaggerConfiguration;
+
+import jakarta.servlet.ServletContext;
+
+/**
+ * A newly trained model that is evaluated in shadow mode before
+ * it replaces the tagger's active model.
+ */
+public class CandidateModelResource extends Resource implements Gettable, Postable, Deletable {
+	private final Tagger tagger;
+
+	public CandidateModelResource(ServletContext context, Tagger tagger) {
+		super(context);
+		this.tagger = tagger;
+	}
+
+	@Override
+	public String getURL() {
+		return getContextPath() + getRelativeCandidateModelURL(tagger);
+	}
+
+	@Override
+	public Response doGet(Request request) {
+		JSONResponse response = request.okJSON();
+		ShadowEvaluation evaluation = tagger.getShadowEvaluation();
+		TaggerConfiguration config = tagger.getConfiguration();
+		response.getRoot().put("title", "Candidate model for tagger: " + tagger.getId());
+		response.getRoot().put("has_candidate", evaluation != null);
+		if (evaluation != null) {
+			response.getRoot().set("evaluation",
+					evaluation.toJSON(config.getShadowMinSamples(), config.getShadowMaxP99Ratio()));
+		}
+		if (tagger.getLastShadowEvaluationResult() != null) {
+			response.getRoot().set("last_evaluation", tagger.getLastShadowEvaluationResult());
+		}
+		return response;
+	}
+
+	/**
+	 * Promotes the candidate to be the active model.
+	 */
+	@Override
+	public Response doPost(Request request) {
+		if (tagger.getShadowEvaluation() == null) {
+			return request.badRequest("There is no candidate model");
+		}
+		try {
+			String refusal = tagger.promoteCandidate();
+			if (refusal != null) {
+				return request.conflict(refusal);
+			}
+		} catch (MauiServerException ex) {
+			return request.serverError(ex);
+		}
+		return doGet(request);
+	}
+
+	@Override
+	public Response doDelete(Request request) {
+		tagger.discardCandidate();
+		return request.noContent();
+	}
+
+	public static String getRelativeCandidateModelURL(Tagger tagger) {
+		return TrainingResource.getRelativeTrainingURL(tagger) + "/candidate";
+	}
+}
@@ -56,7 +56,7 @@ public class ConfigurationResource extends Resource
 			if (json == null) {
 				return request.badRequest("Configuration in JSON format must be sent in request body");
 			}
-			TaggerConfiguration config = tagger.getConfiguration();
+			TaggerConfiguration config = tagger.getConfiguration().copy();
 			config.updateFromJSON(json);
 			tagger.setConfiguration(config);
 			return createConfigResponse(request);
@@ -6,6 +6,7 @@ import org.topbraid.mauiserver.framework.Resource.Gettable;
 import org.topbraid.mauiserver.framework.Resource.Postable;
 import org.topbraid.mauiserver.framework.Response;
 import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.tagger.RecommendationCache;
 import org.topbraid.mauiserver.tagger.Tagger;
 import org.topbraid.mauiserver.tagger.TaggerCollection;
 import org.topbraid.mauiserver.tagger.TaggerConfiguration;
@@ -36,6 +37,8 @@ public class HomeResource extends Resource implements Gettable, Postable {
 		root.put("data_dir", taggers.getDataDir());
 		root.put("default_lang", MauiServer.getDefaultLanguage());
 		root.put("version", MauiServer.getVersion());
+		root.set("suggest_cache", RecommendationCache.get().toJSON());
+		root.set("tagger_memory", taggers.getMemoryJSON());
 		ArrayNode array = root.arrayNode();
 		root.set("taggers", array);
 		for (String id: taggers.getTaggers()) {
@@ -60,6 +63,10 @@ public class HomeResource extends Resource implements Gettable, Postable {
 		if (taggerId == null) {
 			return request.badRequest("id", "Missing POST parameter: id");
 		}
+		if (TaggerCollection.isReservedTaggerId(taggerId)) {
+			return request.badRequest("id", taggerId, 
+					"Tagger ID is reserved for a server-wide resource");
+		}
 		if (!taggers.isValidTaggerId(taggerId)) {
 			return request.badRequest("id", taggerId, 
 					"Tagger ID must not contain \\ or / characters");
@@ -70,7 +77,7 @@ public class HomeResource extends Resource implements Gettable, Postable {
 		}
 		try {
 			Tagger tagger = taggers.createTagger(taggerId);
-			TaggerConfiguration config = tagger.getConfiguration();
+			TaggerConfiguration config = tagger.getConfiguration().copy();
 			JsonNode json = request.getBodyJSON();
 			if (json != null) {
 				config.updateFromJSON(json);
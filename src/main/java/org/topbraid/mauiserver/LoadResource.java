@@ -0,0 +1,53 @@
+package org.topbraid.mauiserver;
+
+import org.topbraid.mauiserver.framework.Request;
+import org.topbraid.mauiserver.framework.Resource;
+import org.topbraid.mauiserver.framework.Resource.Gettable;
+import org.topbraid.mauiserver.framework.Response;
+import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.tagger.Tagger;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The current load on a tagger's suggest resources, for load balancers.
+ * Cheap to compute: it doesn't load the tagger's model. Responds with
+ * status 503 while the tagger's bulkhead is rejecting requests, so that
+ * a load balancer can use it as a health check.
+ */
+public class LoadResource extends Resource implements Gettable {
+	private final static int retryAfterSeconds = 1;
+
+	private final Tagger tagger;
+
+	public LoadResource(ServletContext context, Tagger tagger) {
+		super(context);
+		this.tagger = tagger;
+	}
+
+	@Override
+	public String getURL() {
+		return getContextPath() + getRelativeLoadURL(tagger);
+	}
+
+	@Override
+	public Response doGet(Request request) {
+		ObjectNode load = tagger.getBulkhead().toJSON();
+		boolean accepting = load.get("accepting").asBoolean();
+		JSONResponse r = request.respondJSON(accepting ?
+				HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		if (!accepting) {
+			r.setHeader("Retry-After", Integer.toString(retryAfterSeconds));
+		}
+		r.getRoot().put("tagger", tagger.getId());
+		r.getRoot().setAll(load);
+		return r;
+	}
+
+	public static String getRelativeLoadURL(Tagger tagger) {
+		return TaggerResource.getRelativeTaggerURL(tagger) + "/load";
+	}
+}
@@ -3,12 +3,17 @@ package org.topbraid.mauiserver;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.topbraid.mauiserver.classifier.ClassifierResource;
 import org.topbraid.mauiserver.framework.Resource;
 import org.topbraid.mauiserver.framework.Server;
+import org.topbraid.mauiserver.tagger.SuggestSession;
 import org.topbraid.mauiserver.tagger.Tagger;
 import org.topbraid.mauiserver.tagger.TaggerCollection;
 
@@ -17,7 +22,12 @@ import jakarta.servlet.ServletContext;
 public class MauiServer implements Server {
 	public final static Logger log = LoggerFactory.getLogger(MauiServer.class);
 
-	private final TaggerCollection taggers = new TaggerCollection(getDataDir());
+	private final TaggerCollection taggers = new TaggerCollection(getDataDir(), getTaggerMemoryBytes());
+	private final int suggestThreads = getSuggestThreads();
+	private final ExecutorService suggestExecutor = createSuggestExecutor(suggestThreads, "suggest");
+	private final int bulkSuggestThreads = getBulkSuggestThreads();
+	private final ExecutorService bulkSuggestExecutor = createSuggestExecutor(bulkSuggestThreads, "bulk");
+	private final int maxSuggestBodyBytes = getMaxSuggestBodyBytes();
 
 	/**
 	 * Establishes the file system directory where Maui Server keeps its data.
@@ -41,6 +51,224 @@ public class MauiServer implements Server {
 				"en");
 	}
 
+	/**
+	 * Establishes the number of worker threads used for processing
+	 * batches of documents. Defaults to the number of available cores.
+	 */
+	public static int getSuggestThreads() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.suggestThreads", 
+				"MAUI_SERVER_SUGGEST_THREADS", 
+				null);
+		if (value != null) {
+			try {
+				int threads = Integer.parseInt(value.trim());
+				if (threads > 0) return threads;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid number of suggest threads: " + value);
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Establishes the number of worker threads used for processing bulk
+	 * requests, such as batches. These are separate from the threads
+	 * for interactive requests. Defaults to three quarters of the
+	 * interactive threads, leaving at least one core to interactive
+	 * requests if there is more than one.
+	 */
+	public static int getBulkSuggestThreads() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.bulkSuggestThreads", 
+				"MAUI_SERVER_BULK_SUGGEST_THREADS", 
+				null);
+		if (value != null) {
+			try {
+				int threads = Integer.parseInt(value.trim());
+				if (threads > 0) return threads;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid number of bulk suggest threads: " + value);
+		}
+		int threads = getSuggestThreads();
+		return Math.max(1, threads - Math.max(1, threads / 4));
+	}
+
+	/**
+	 * Establishes the memory budget, in bytes, for caching suggestion
+	 * results across all taggers. 0 disables the cache.
+	 */
+	public static long getSuggestCacheBytes() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.suggestCacheBytes", 
+				"MAUI_SERVER_SUGGEST_CACHE_BYTES", 
+				null);
+		if (value != null) {
+			try {
+				long bytes = Long.parseLong(value.trim());
+				if (bytes >= 0) return bytes;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid suggest cache size: " + value);
+		}
+		return 64L * 1024 * 1024;
+	}
+
+	/**
+	 * Establishes the maximum size, in bytes, of request bodies
+	 * accepted by the suggestion service. Defaults to 10 MB.
+	 */
+	public static int getMaxSuggestBodyBytes() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.maxSuggestBodyBytes", 
+				"MAUI_SERVER_MAX_SUGGEST_BODY_BYTES", 
+				null);
+		if (value != null) {
+			try {
+				int bytes = Integer.parseInt(value.trim());
+				if (bytes > 0) return bytes;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid maximum suggest body size: " + value);
+		}
+		return 10 * 1024 * 1024;
+	}
+
+	/**
+	 * Establishes how long, in seconds, incremental suggest sessions
+	 * may be idle before they are removed. Defaults to 10 minutes.
+	 */
+	public static int getSuggestSessionTimeoutSeconds() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.suggestSessionTimeout", 
+				"MAUI_SERVER_SUGGEST_SESSION_TIMEOUT", 
+				null);
+		if (value != null) {
+			try {
+				int seconds = Integer.parseInt(value.trim());
+				if (seconds > 0) return seconds;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid suggest session timeout: " + value);
+		}
+		return 600;
+	}
+
+	/**
+	 * Establishes how many incremental suggest sessions may be open
+	 * at the same time, per tagger. Defaults to 1000.
+	 */
+	public static int getMaxSuggestSessions() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.maxSuggestSessions", 
+				"MAUI_SERVER_MAX_SUGGEST_SESSIONS", 
+				null);
+		if (value != null) {
+			try {
+				int max = Integer.parseInt(value.trim());
+				if (max > 0) return max;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid maximum number of suggest sessions: " + value);
+		}
+		return 1000;
+	}
+
+	/**
+	 * Establishes the maximum number of tokens whose stems are cached,
+	 * per stemmer class. Defaults to 100,000.
+	 */
+	public static int getStemCacheSize() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.stemCacheSize", 
+				"MAUI_SERVER_STEM_CACHE_SIZE", 
+				null);
+		if (value != null) {
+			try {
+				int size = Integer.parseInt(value.trim());
+				if (size >= 0) return size;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid stem cache size: " + value);
+		}
+		return 100000;
+	}
+
+	/**
+	 * Establishes the default maximum number of suggest requests per tagger
+	 * that are processed at the same time. Can be overridden on a per-tagger
+	 * basis. Defaults to twice the number of available cores.
+	 */
+	public static int getBulkheadMaxInFlight() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.bulkheadMaxInFlight", 
+				"MAUI_SERVER_BULKHEAD_MAX_IN_FLIGHT", 
+				null);
+		if (value != null) {
+			try {
+				int max = Integer.parseInt(value.trim());
+				if (max > 0) return max;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid bulkhead in-flight limit: " + value);
+		}
+		return 2 * Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Establishes the default maximum number of suggest requests per tagger
+	 * that wait for their turn. Can be overridden on a per-tagger basis.
+	 * Defaults to four times the number of available cores.
+	 */
+	public static int getBulkheadMaxQueued() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.bulkheadMaxQueued", 
+				"MAUI_SERVER_BULKHEAD_MAX_QUEUED", 
+				null);
+		if (value != null) {
+			try {
+				int max = Integer.parseInt(value.trim());
+				if (max >= 0) return max;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid bulkhead queue limit: " + value);
+		}
+		return 4 * Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Establishes the memory budget, in bytes, for the vocabularies and
+	 * models of loaded taggers. When it is exceeded, the least recently
+	 * used taggers are unloaded. 0 disables the budget. Defaults to half
+	 * of the maximum heap size.
+	 */
+	public static long getTaggerMemoryBytes() {
+		String value = getGlobalConfigurationOption(
+				"MauiServer.taggerMemoryBytes", 
+				"MAUI_SERVER_TAGGER_MEMORY_BYTES", 
+				null);
+		if (value != null) {
+			try {
+				long bytes = Long.parseLong(value.trim());
+				if (bytes >= 0) return bytes;
+			} catch (NumberFormatException ex) {
+				// Fall through to default
+			}
+			log.warn("Ignoring invalid tagger memory budget: " + value);
+		}
+		return Runtime.getRuntime().maxMemory() / 2;
+	}
+
 	/**
 	 * Returns the application version, as defined in pom.xml
 	 */
@@ -74,6 +302,10 @@ public class MauiServer implements Server {
 			return new ClassifierResource(context, path.length > 1 ? path[1] : null);
 		}
 		
+		if (path.length == 1 && MultiSuggestResource.URL_PART.equals(path[0])) {
+			return new MultiSuggestResource(context, taggers, suggestExecutor, maxSuggestBodyBytes);
+		}
+		
 		String taggerId = path[0];
 		Tagger tagger = taggers.getTagger(TaggerResource.decodeTaggerIdFromURL(taggerId));
 		if (tagger == null) return null;
@@ -81,7 +313,21 @@ public class MauiServer implements Server {
 			return new TaggerResource(context, taggers, tagger);
 		}
 		if (path.length == 2 && "suggest".equals(path[1])) {
-			return new SuggestResource(context, tagger);
+			return new SuggestResource(context, tagger, suggestExecutor, bulkSuggestExecutor, maxSuggestBodyBytes);
+		}
+		if (path.length == 3 && "suggest".equals(path[1]) && "batch".equals(path[2])) {
+			return new BatchSuggestResource(context, tagger, bulkSuggestExecutor, bulkSuggestThreads * 2);
+		}
+		if (path.length == 3 && "suggest".equals(path[1]) && "session".equals(path[2])) {
+			return new SuggestSessionsResource(context, tagger);
+		}
+		if (path.length == 4 && "suggest".equals(path[1]) && "session".equals(path[2])) {
+			SuggestSession session = tagger.getSessions().get(path[3]);
+			if (session == null) return null;
+			return new SuggestSessionResource(context, tagger, session, maxSuggestBodyBytes);
+		}
+		if (path.length == 2 && "load".equals(path[1])) {
+			return new LoadResource(context, tagger);
 		}
 		if (path.length == 2 && "config".equals(path[1])) {
 			return new ConfigurationResource(context, tagger);
@@ -92,12 +338,28 @@ public class MauiServer implements Server {
 		if (path.length == 2 && "train".equals(path[1])) {
 			return new TrainingResource(context, tagger);
 		}
+		if (path.length == 3 && "train".equals(path[1]) && "candidate".equals(path[2])) {
+			return new CandidateModelResource(context, tagger);
+		}
 		if (path.length == 2 && "xvalidate".equals(path[1])) {
 			return new CrossValidationResource(context, tagger);
 		}
 		return null;
 	}
 
+	private static ExecutorService createSuggestExecutor(int threads, String name) {
+		log.info("Using " + threads + " " + name + " worker threads");
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "maui-" + name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
 	private static String getGlobalConfigurationOption(
 			String systemProperty, String envVariable, String defaultValue) {
 		// Check the Java system property, which can be set via -D on the Java command line
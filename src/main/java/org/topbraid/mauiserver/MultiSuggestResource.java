@@ -0,0 +1,239 @@
+package org.topbraid.mauiserver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.topbraid.mauiserver.framework.PayloadTooLargeException;
+import org.topbraid.mauiserver.framework.Request;
+import org.topbraid.mauiserver.framework.Resource;
+import org.topbraid.mauiserver.framework.Resource.Admission;
+import org.topbraid.mauiserver.framework.Resource.Gettable;
+import org.topbraid.mauiserver.framework.Resource.Postable;
+import org.topbraid.mauiserver.framework.Response;
+import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.framework.ServiceUnavailableException;
+import org.topbraid.mauiserver.tagger.Bulkhead;
+import org.topbraid.mauiserver.tagger.ConcurrencyLimiter;
+import org.topbraid.mauiserver.tagger.Deadline;
+import org.topbraid.mauiserver.tagger.DeadlineExceededException;
+import org.topbraid.mauiserver.tagger.RecommendationResult;
+import org.topbraid.mauiserver.tagger.RequestCancelledException;
+import org.topbraid.mauiserver.tagger.Tagger;
+import org.topbraid.mauiserver.tagger.TaggerCollection;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import jakarta.servlet.ServletContext;
+
+/**
+ * Tag suggestions for one text from several taggers in a single request.
+ * The taggers run concurrently on the shared pool of worker threads.
+ * The response has one entry per tagger, with its suggestions or its
+ * error; a failing tagger does not affect the others. Each tagger's
+ * per-tagger limits apply as if it had been asked on its own.
+ */
+public class MultiSuggestResource extends Resource implements Gettable, Postable {
+	private final static Logger log = LoggerFactory.getLogger(MultiSuggestResource.class);
+
+	public final static String URL_PART = "suggest";
+
+	private final TaggerCollection taggers;
+	private final ExecutorService executor;
+	private final int maxBodyBytes;
+
+	/**
+	 * @param maxBodyBytes Maximum size of POSTed request bodies
+	 */
+	public MultiSuggestResource(ServletContext context, TaggerCollection taggers, ExecutorService executor, int maxBodyBytes) {
+		super(context);
+		this.taggers = taggers;
+		this.executor = executor;
+		this.maxBodyBytes = maxBodyBytes;
+	}
+
+	@Override
+	public String getURL() {
+		return getContextPath() + "/" + URL_PART;
+	}
+
+	@Override
+	public Response doGet(Request request) {
+		if (request.get("text") != null) {
+			return doSuggest(request, request.get("text"), parseTaggerIds(request.get("taggers")));
+		}
+		JSONResponse r = request.okJSON();
+		r.getRoot().put("title", "Tag Suggestion Service for Multiple Taggers");
+		r.getRoot().put("usage", "GET or POST with parameters 'text' and 'taggers' (comma-separated tagger IDs), or POST a JSON object with 'text' and 'taggers' (array of tagger IDs), to get tag suggestions from each of the taggers");
+		return r;
+	}
+
+	@Override
+	public Response doPost(Request request) {
+		JsonNode body;
+		try {
+			body = request.getBodyJSON(maxBodyBytes);
+		} catch (PayloadTooLargeException ex) {
+			return request.payloadTooLarge(ex.getMessage());
+		} catch (MauiServerException ex) {
+			return request.badRequest(ex.getMessage());
+		}
+		if (body == null || !body.isObject()) {
+			return request.badRequest("Request body must be a JSON object or form-encoded");
+		}
+		JsonNode text = body.get("text");
+		if (text == null || text.isNull()) {
+			return request.badRequest("text", "Missing field: 'text'");
+		}
+		if (text.asText().trim().isEmpty()) {
+			return request.badRequest("text", "Empty text");
+		}
+		List<String> ids = new ArrayList<String>();
+		JsonNode taggersNode = body.get("taggers");
+		if (taggersNode != null && taggersNode.isArray()) {
+			for (JsonNode id: taggersNode) {
+				ids.add(id.asText());
+			}
+		} else if (taggersNode != null && !taggersNode.isNull()) {
+			ids = parseTaggerIds(taggersNode.asText());
+		}
+		return doSuggest(request, text.asText(), ids);
+	}
+
+	private Response doSuggest(Request request, String text, List<String> taggerIds) {
+		Set<String> ids = new LinkedHashSet<String>(taggerIds);
+		if (ids.isEmpty()) {
+			return request.badRequest("taggers", "Missing field: 'taggers'");
+		}
+		Deadline requested;
+		Bulkhead.Lane lane;
+		try {
+			requested = SuggestResource.getRequestedDeadline(request);
+			lane = SuggestResource.getLane(request, Bulkhead.Lane.INTERACTIVE);
+		} catch (MauiServerException ex) {
+			return request.badRequest(ex.getMessage());
+		}
+		long startTime = System.currentTimeMillis();
+		Map<String, Future<ObjectNode>> futures = new LinkedHashMap<String, Future<ObjectNode>>();
+		for (String id: ids) {
+			futures.put(id, executor.submit(() -> suggest(id, text, requested, lane)));
+		}
+		JSONResponse response = request.okJSON();
+		ObjectNode results = response.getRoot().objectNode();
+		int failed = 0;
+		try {
+			for (Map.Entry<String, Future<ObjectNode>> entry: futures.entrySet()) {
+				ObjectNode result;
+				try {
+					result = entry.getValue().get();
+				} catch (ExecutionException ex) {
+					// suggest() catches its own exceptions, so this is unexpected
+					result = JsonNodeFactory.instance.objectNode();
+					result.put("error", String.valueOf(ex.getCause().getMessage()));
+				}
+				if (result.has("error")) {
+					failed++;
+				}
+				results.set(entry.getKey(), result);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			for (Future<ObjectNode> future: futures.values()) {
+				future.cancel(true);
+			}
+			return request.serverError(new MauiServerException("Interrupted while waiting for suggestions", ex));
+		}
+		response.getRoot().put("title", "Recommendations from " + ids.size() + " taggers");
+		response.getRoot().put("failed", failed);
+		response.getRoot().put("runtime_millis", System.currentTimeMillis() - startTime);
+		response.getRoot().set("results", results);
+		log.debug("Multi-tagger suggestion from " + ids.size() + " taggers, " + failed + " failed");
+		return response;
+	}
+
+	/**
+	 * Gets suggestions from one tagger, subject to the same per-tagger
+	 * limits as its own suggestion resource: the tagger's {@link Bulkhead}
+	 * and, if enabled, its {@link ConcurrencyLimiter}. A tagger that is
+	 * over its limits gets an error entry.
+	 *
+	 * @param requested Deadline set by the request, or <code>null</code> for the tagger's default
+	 */
+	private ObjectNode suggest(String taggerId, String text, Deadline requested, Bulkhead.Lane lane) {
+		long startTime = System.currentTimeMillis();
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		try {
+			Tagger tagger = taggers.getTagger(taggerId);
+			if (tagger == null) {
+				result.put("error", "No tagger with that ID");
+			} else if (!tagger.isTrained()) {
+				result.put("error", "Tagger must be trained before Tag Suggestion Service can be used");
+			} else {
+				Deadline deadline = requested != null ? requested : SuggestResource.getDefaultDeadline(tagger.getConfiguration());
+				Admission admission = SuggestResource.enterBulkhead(tagger, lane, deadline);
+				try {
+					suggest(tagger, text, deadline, result);
+				} finally {
+					admission.release();
+				}
+			}
+		} catch (ServiceUnavailableException ex) {
+			result.put("error", ex.getMessage());
+		} catch (DeadlineExceededException | RequestCancelledException ex) {
+			result.put("error", ex.getMessage());
+		} catch (RuntimeException ex) {
+			log.warn("Error in tagger " + taggerId + " during multi-tagger suggestion", ex);
+			result.put("error", String.valueOf(ex.getMessage()));
+		}
+		result.put("runtime_millis", System.currentTimeMillis() - startTime);
+		return result;
+	}
+
+	private void suggest(Tagger tagger, String text, Deadline deadline, ObjectNode result) {
+		ConcurrencyLimiter.Permit permit = null;
+		if (tagger.getConfiguration().isAdaptiveConcurrency()) {
+			permit = tagger.getConcurrencyLimiter().tryAcquire();
+			if (permit == null) {
+				result.put("error", "Too many concurrent requests for tagger " + tagger.getId() + "; try again later");
+				return;
+			}
+		}
+		RecommendationResult recommendation;
+		try {
+			recommendation = tagger.recommendTags(text, null, deadline);
+			if (permit != null) permit.release();
+		} catch (DeadlineExceededException ex) {
+			if (permit != null) permit.releaseDropped();
+			throw ex;
+		} finally {
+			if (permit != null) permit.releaseIgnored();
+		}
+		if (recommendation == null) {
+			result.put("error", "Tagger is not ready");
+		} else {
+			result.put("title", recommendation.size() + " recommendations from " + tagger.getId());
+			recommendation.toJSON(result);
+		}
+	}
+
+	private static List<String> parseTaggerIds(String value) {
+		List<String> result = new ArrayList<String>();
+		if (value == null) return result;
+		for (String id: value.split(",")) {
+			if (!id.trim().isEmpty()) {
+				result.add(id.trim());
+			}
+		}
+		return result;
+	}
+}
@@ -1,22 +1,64 @@
 package org.topbraid.mauiserver;
 
+import java.util.concurrent.Executor;
+
+import org.topbraid.mauiserver.framework.PayloadTooLargeException;
 import org.topbraid.mauiserver.framework.Request;
 import org.topbraid.mauiserver.framework.Resource;
 import org.topbraid.mauiserver.framework.Resource.Gettable;
+import org.topbraid.mauiserver.framework.Resource.Guarded;
 import org.topbraid.mauiserver.framework.Resource.Postable;
 import org.topbraid.mauiserver.framework.Response;
 import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.framework.ServiceUnavailableException;
+import org.topbraid.mauiserver.tagger.Bulkhead;
+import org.topbraid.mauiserver.tagger.ConcurrencyLimiter;
+import org.topbraid.mauiserver.tagger.Deadline;
+import org.topbraid.mauiserver.tagger.DeadlineExceededException;
+import org.topbraid.mauiserver.tagger.EnumNames;
 import org.topbraid.mauiserver.tagger.RecommendationResult;
+import org.topbraid.mauiserver.tagger.RequestCancelledException;
 import org.topbraid.mauiserver.tagger.Tagger;
+import org.topbraid.mauiserver.tagger.TaggerConfiguration;
 
 import jakarta.servlet.ServletContext;
 
-public class SuggestResource extends Resource implements Gettable, Postable {
+public class SuggestResource extends Resource implements Gettable, Postable, Guarded {
+	public final static String ENGINE_MAUI = "maui";
+	public final static String ENGINE_DICTIONARY = "dictionary";
+	
+	/**
+	 * Request header with the number of milliseconds the client will wait for the response
+	 */
+	public final static String HEADER_TIMEOUT = "X-Request-Timeout";
+	
+	/**
+	 * Request header with the request's {@link Bulkhead.Lane}, <code>interactive</code> or <code>bulk</code>;
+	 * alternatively given as the <code>priority</code> query parameter
+	 */
+	public final static String HEADER_PRIORITY = "X-Request-Priority";
+	
+	private final static int retryAfterSeconds = 1;
+	private final static int loadingRetryAfterSeconds = 5;
+	
+	private final static String attributeDeadline = "mauiserver.deadline";
+	
 	private final Tagger tagger;
+	private final Executor sectionExecutor;
+	private final Executor bulkSectionExecutor;
+	private final int maxBodyBytes;
 	
-	public SuggestResource(ServletContext context, Tagger tagger) {
+	/**
+	 * @param sectionExecutor Executor for processing sections of long texts in parallel
+	 * @param bulkSectionExecutor The same, for requests in the bulk lane
+	 * @param maxBodyBytes Maximum size of POSTed request bodies
+	 */
+	public SuggestResource(ServletContext context, Tagger tagger, Executor sectionExecutor, Executor bulkSectionExecutor, int maxBodyBytes) {
 		super(context);
 		this.tagger = tagger;
+		this.sectionExecutor = sectionExecutor;
+		this.bulkSectionExecutor = bulkSectionExecutor;
+		this.maxBodyBytes = maxBodyBytes;
 	}
 	
 	@Override
@@ -24,34 +66,230 @@ public class SuggestResource extends Resource implements Gettable, Postable {
 		return getContextPath() + getRelativeSuggesterURL(tagger);
 	}
 	
+	/**
+	 * Requests for suggestions must pass the tagger's {@link Bulkhead};
+	 * the usage description doesn't.
+	 */
+	@Override
+	public Admission admit(Request request) throws ServiceUnavailableException {
+		if (!"POST".equals(request.getMethod()) && request.get("text") == null) return null;
+		Deadline deadline;
+		Bulkhead.Lane lane;
+		try {
+			deadline = getDeadline(request, tagger.getConfiguration());
+			lane = getLane(request, Bulkhead.Lane.INTERACTIVE);
+		} catch (MauiServerException ex) {
+			// Reported as a bad request when the request is processed
+			return null;
+		}
+		// Time spent in the queue counts against the deadline
+		rememberDeadline(request, deadline);
+		return enterBulkhead(tagger, lane, deadline);
+	}
+	
+	/**
+	 * Makes {@link #getDeadline(Request, TaggerConfiguration)} return the
+	 * deadline used for admitting the request, rather than a new one.
+	 */
+	static void rememberDeadline(Request request, Deadline deadline) {
+		request.setAttribute(attributeDeadline, deadline);
+	}
+	
+	/**
+	 * Enters the tagger's {@link Bulkhead}, waiting until the deadline if it is busy.
+	 * If the tagger's vocabulary and model are not loaded, loading starts
+	 * in the background, and requests are rejected right away rather than
+	 * waiting for it.
+	 * 
+	 * @return An admission that leaves the bulkhead when released
+	 * @throws ServiceUnavailableException if the tagger is loading, or the lane's queue is full, or the deadline has passed
+	 */
+	static Admission enterBulkhead(Tagger tagger, Bulkhead.Lane lane, Deadline deadline) throws ServiceUnavailableException {
+		if (!tagger.loadInBackground()) {
+			throw new ServiceUnavailableException("Tagger " + tagger.getId() + " is loading; try again later",
+					loadingRetryAfterSeconds);
+		}
+		Bulkhead.Ticket ticket = tagger.getBulkhead().enter(lane, deadline);
+		if (ticket == null) {
+			throw new ServiceUnavailableException(getBusyMessage(tagger, lane), retryAfterSeconds);
+		}
+		return ticket::exit;
+	}
+	
+	/**
+	 * Rejects a request right away if the tagger is loading or the lane's
+	 * queue is full, without entering the {@link Bulkhead}. For requests
+	 * that enter it later, in smaller units of work.
+	 * 
+	 * @throws ServiceUnavailableException if the tagger is loading, or the lane's queue is full
+	 */
+	static void checkBulkhead(Tagger tagger, Bulkhead.Lane lane) throws ServiceUnavailableException {
+		if (!tagger.loadInBackground()) {
+			throw new ServiceUnavailableException("Tagger " + tagger.getId() + " is loading; try again later",
+					loadingRetryAfterSeconds);
+		}
+		if (tagger.getBulkhead().isFull(lane)) {
+			throw new ServiceUnavailableException(getBusyMessage(tagger, lane), retryAfterSeconds);
+		}
+	}
+	
+	static String getBusyMessage(Tagger tagger, Bulkhead.Lane lane) {
+		return "Too many " + EnumNames.toString(lane) + " requests for tagger " + tagger.getId() + "; try again later";
+	}
+	
+	/**
+	 * Gets the request's lane from the {@link #HEADER_PRIORITY} header or the
+	 * <code>priority</code> query parameter, without reading the request body.
+	 */
+	static Bulkhead.Lane getLane(Request request, Bulkhead.Lane defaultLane) throws MauiServerException {
+		String priority = request.getHeader(HEADER_PRIORITY);
+		if (priority == null || "".equals(priority.trim())) {
+			priority = request.getFromQueryString("priority");
+		}
+		if (priority == null || "".equals(priority.trim())) return defaultLane;
+		return Bulkhead.Lane.fromString(priority.trim().toLowerCase());
+	}
+	
 	@Override
 	public Response doGet(Request request) {
 		if (request.get("text") != null) {
-			return doSuggest(request, request.get("text"));
+			Deadline deadline;
+			Bulkhead.Lane lane;
+			try {
+				deadline = getDeadline(request, tagger.getConfiguration());
+				lane = getLane(request, Bulkhead.Lane.INTERACTIVE);
+			} catch (MauiServerException ex) {
+				return request.badRequest(ex.getMessage());
+			}
+			return doSuggest(request, request.get("text"), deadline, lane);
 		}
 		JSONResponse r = request.okJSON();
 		r.getRoot().put("title", "Tag Suggestion Service for Tagger: " + tagger.getId());
-		r.getRoot().put("usage", "GET or POST with parameter 'text' to get tag suggestions");
+		r.getRoot().put("usage", "GET or POST with parameter 'text', or POST a text/plain body or JSON object with 'text' field, to get tag suggestions; add 'parallel=true' to process long texts in parallel sections, or 'engine=dictionary' to only match vocabulary labels; scripts should add 'priority=bulk'");
 		r.getRoot().put("is_ready", tagger.isTrained());
 		return r;
 	}
 	
 	@Override
 	public Response doPost(Request request) {
-		if (request.get("text") == null)
+		Deadline deadline;
+		Bulkhead.Lane lane;
+		String text;
+		try {
+			deadline = getDeadline(request, tagger.getConfiguration());
+			lane = getLane(request, Bulkhead.Lane.INTERACTIVE);
+			text = getPostedText(request, maxBodyBytes);
+		} catch (PayloadTooLargeException ex) {
+			return request.payloadTooLarge(ex.getMessage());
+		} catch (MauiServerException ex) {
+			return request.badRequest(ex.getMessage());
+		}
+		if (text == null)
 			return request.badRequest("text", "Missing field: 'text'");
-		if (request.get("text").trim().isEmpty()) {
+		if (text.trim().isEmpty()) {
 			return request.badRequest("text", "Empty text");
 		}
-		return doSuggest(request, request.get("text"));
+		return doSuggest(request, text, deadline, lane);
+	}
+
+	/**
+	 * Gets the text from a POST request: as a form-encoded parameter, as
+	 * the entire body if it is <code>text/plain</code>, or as the
+	 * <code>text</code> field of a JSON object. Other parameters are always
+	 * taken from the query string or form. Bodies larger than the limit
+	 * are rejected, if possible before reading them.
+	 *
+	 * @return The text, or <code>null</code> if none was given
+	 * @throws PayloadTooLargeException if the body is larger than <code>maxBodyBytes</code>
+	 */
+	static String getPostedText(Request request, int maxBodyBytes) throws MauiServerException {
+		request.checkContentLength(maxBodyBytes);
+		if (request.hasContentType("text/plain")) {
+			return request.getBodyText(maxBodyBytes);
+		}
+		if (request.hasContentType("application/json")) {
+			return request.getBodyJSONField("text", maxBodyBytes);
+		}
+		return request.get("text");
 	}
 
-	private Response doSuggest(Request request, String text) {
-		if (!tagger.isTrained()) {
-			return request.badRequest(
-					"Tagger must be trained before Tag Suggestion Service can be used");
+	/**
+	 * Gets the deadline for a suggest request from the {@link #HEADER_TIMEOUT}
+	 * header, or else from the tagger's configuration. It starts counting
+	 * when the request is admitted to the tagger's bulkhead queue.
+	 */
+	static Deadline getDeadline(Request request, TaggerConfiguration config) throws MauiServerException {
+		Deadline admitted = (Deadline) request.getAttribute(attributeDeadline);
+		if (admitted != null) return admitted;
+		Deadline requested = getRequestedDeadline(request);
+		return requested != null ? requested : getDefaultDeadline(config);
+	}
+
+	/**
+	 * @return The deadline from the {@link #HEADER_TIMEOUT} header, or <code>null</code> if there is none
+	 */
+	static Deadline getRequestedDeadline(Request request) throws MauiServerException {
+		String header = request.getHeader(HEADER_TIMEOUT);
+		if (header == null || "".equals(header.trim())) return null;
+		long millis;
+		try {
+			millis = Long.parseLong(header.trim());
+		} catch (NumberFormatException ex) {
+			throw new MauiServerException("Header " + HEADER_TIMEOUT + " must be a number of milliseconds: '" + header + "'");
+		}
+		if (millis < 1) {
+			throw new MauiServerException("Header " + HEADER_TIMEOUT + " must be at least 1");
+		}
+		return Deadline.afterMillis(millis);
+	}
+
+	static Deadline getDefaultDeadline(TaggerConfiguration config) {
+		if (config.getSuggestTimeoutMillis() == null) return Deadline.none();
+		return Deadline.afterMillis(config.getSuggestTimeoutMillis());
+	}
+
+	private Response doSuggest(Request request, String text, Deadline deadline, Bulkhead.Lane lane) {
+		String engine = request.get("engine");
+		RecommendationResult recommendation;
+		if (engine == null || "".equals(engine) || ENGINE_MAUI.equals(engine)) {
+			if (!tagger.isTrained()) {
+				return request.badRequest(
+						"Tagger must be trained before Tag Suggestion Service can be used");
+			}
+			boolean parallel = "true".equals(request.get("parallel"));
+			ConcurrencyLimiter.Permit permit = null;
+			if (tagger.getConfiguration().isAdaptiveConcurrency()) {
+				permit = tagger.getConcurrencyLimiter().tryAcquire();
+				if (permit == null) {
+					return request.serviceUnavailable("Too many concurrent requests for tagger " + tagger.getId() +
+							"; try again later", retryAfterSeconds);
+				}
+			}
+			try {
+				Executor executor = lane == Bulkhead.Lane.BULK ? bulkSectionExecutor : sectionExecutor;
+				recommendation = tagger.recommendTags(text, parallel ? executor : null, deadline);
+				if (permit != null) permit.release();
+			} catch (DeadlineExceededException ex) {
+				if (permit != null) permit.releaseDropped();
+				return request.serviceUnavailable(ex.getMessage());
+			} catch (RequestCancelledException ex) {
+				return request.serviceUnavailable(ex.getMessage());
+			} finally {
+				if (permit != null) permit.releaseIgnored();
+			}
+		} else if (ENGINE_DICTIONARY.equals(engine)) {
+			if (!tagger.hasVocabulary()) {
+				return request.badRequest(
+						"Tagger must have a vocabulary before the dictionary engine can be used");
+			}
+			recommendation = tagger.recommendTagsFromDictionary(text);
+		} else {
+			return request.badRequest("engine", engine, 
+					"Engine must be '" + ENGINE_MAUI + "' or '" + ENGINE_DICTIONARY + "'");
+		}
+		if (recommendation == null) {
+			return request.badRequest("Tagger is not ready");
 		}
-		RecommendationResult recommendation = tagger.recommendTags(text);
 		JSONResponse response = request.okJSON();
 		response.getRoot().put("title", recommendation.size() + " recommendations from " + tagger.getId());
 		recommendation.toJSON(response.getRoot());
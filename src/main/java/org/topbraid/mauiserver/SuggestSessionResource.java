@@ -0,0 +1,120 @@
+package org.topbraid.mauiserver;
+
+import org.topbraid.mauiserver.framework.PayloadTooLargeException;
+import org.topbraid.mauiserver.framework.Request;
+import org.topbraid.mauiserver.framework.Resource;
+import org.topbraid.mauiserver.framework.Resource.Deletable;
+import org.topbraid.mauiserver.framework.Resource.Gettable;
+import org.topbraid.mauiserver.framework.Resource.Guarded;
+import org.topbraid.mauiserver.framework.Resource.Postable;
+import org.topbraid.mauiserver.framework.Response;
+import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.framework.ServiceUnavailableException;
+import org.topbraid.mauiserver.tagger.Bulkhead;
+import org.topbraid.mauiserver.tagger.Deadline;
+import org.topbraid.mauiserver.tagger.DeadlineExceededException;
+import org.topbraid.mauiserver.tagger.RecommendationResult;
+import org.topbraid.mauiserver.tagger.RequestCancelledException;
+import org.topbraid.mauiserver.tagger.SuggestSession;
+import org.topbraid.mauiserver.tagger.Tagger;
+
+import jakarta.servlet.ServletContext;
+
+/**
+ * A text that is submitted to a tagger in chunks. Each POST appends
+ * a chunk and returns the topics of the text so far.
+ */
+public class SuggestSessionResource extends Resource implements Gettable, Postable, Deletable, Guarded {
+	private final Tagger tagger;
+	private final SuggestSession session;
+	private final int maxBodyBytes;
+
+	/**
+	 * @param maxBodyBytes Maximum size of POSTed request bodies
+	 */
+	public SuggestSessionResource(ServletContext context, Tagger tagger, SuggestSession session, int maxBodyBytes) {
+		super(context);
+		this.tagger = tagger;
+		this.session = session;
+		this.maxBodyBytes = maxBodyBytes;
+	}
+
+	@Override
+	public String getURL() {
+		return getContextPath() + getRelativeSuggestSessionURL(tagger, session);
+	}
+
+	/**
+	 * Appending a chunk runs Maui, so it must pass the tagger's bulkhead.
+	 * The deadline is the same as for {@link SuggestResource}.
+	 */
+	@Override
+	public Admission admit(Request request) throws ServiceUnavailableException {
+		if (!"POST".equals(request.getMethod())) return null;
+		Deadline deadline;
+		try {
+			deadline = SuggestResource.getDeadline(request, tagger.getConfiguration());
+		} catch (MauiServerException ex) {
+			// Reported as a bad request when the request is processed
+			return null;
+		}
+		SuggestResource.rememberDeadline(request, deadline);
+		return SuggestResource.enterBulkhead(tagger, Bulkhead.Lane.INTERACTIVE, deadline);
+	}
+
+	@Override
+	public Response doGet(Request request) {
+		return respond(request, tagger.getSessionResult(session));
+	}
+
+	/**
+	 * Appends a chunk of text, given the same way as for {@link SuggestResource}.
+	 */
+	@Override
+	public Response doPost(Request request) {
+		Deadline deadline;
+		String text;
+		try {
+			deadline = SuggestResource.getDeadline(request, tagger.getConfiguration());
+			text = SuggestResource.getPostedText(request, maxBodyBytes);
+		} catch (PayloadTooLargeException ex) {
+			return request.payloadTooLarge(ex.getMessage());
+		} catch (MauiServerException ex) {
+			return request.badRequest(ex.getMessage());
+		}
+		if (text == null)
+			return request.badRequest("text", "Missing field: 'text'");
+		if (text.trim().isEmpty()) {
+			return request.badRequest("text", "Empty text");
+		}
+		RecommendationResult recommendation;
+		try {
+			recommendation = tagger.appendToSession(session, text, deadline);
+		} catch (DeadlineExceededException | RequestCancelledException ex) {
+			// The chunk has not been added to the session
+			return request.serviceUnavailable(ex.getMessage());
+		}
+		if (recommendation == null) {
+			return request.badRequest("Tagger is not ready");
+		}
+		return respond(request, recommendation);
+	}
+
+	@Override
+	public Response doDelete(Request request) {
+		tagger.getSessions().close(session.getId());
+		return request.noContent();
+	}
+
+	private Response respond(Request request, RecommendationResult recommendation) {
+		JSONResponse response = request.okJSON();
+		response.getRoot().put("title", recommendation.size() + " recommendations from " + tagger.getId());
+		recommendation.toJSON(response.getRoot());
+		response.getRoot().set("session", session.toJSON());
+		return response;
+	}
+
+	public static String getRelativeSuggestSessionURL(Tagger tagger, SuggestSession session) {
+		return SuggestSessionsResource.getRelativeSuggestSessionsURL(tagger) + "/" + session.getId();
+	}
+}
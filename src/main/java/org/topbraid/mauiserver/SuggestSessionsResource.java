@@ -0,0 +1,82 @@
+package org.topbraid.mauiserver;
+
+import org.topbraid.mauiserver.framework.Request;
+import org.topbraid.mauiserver.framework.Resource;
+import org.topbraid.mauiserver.framework.Resource.Gettable;
+import org.topbraid.mauiserver.framework.Resource.Postable;
+import org.topbraid.mauiserver.framework.Response;
+import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.tagger.SuggestSession;
+import org.topbraid.mauiserver.tagger.SuggestSessions;
+import org.topbraid.mauiserver.tagger.Tagger;
+
+import jakarta.servlet.ServletContext;
+
+/**
+ * Opens sessions for texts that are submitted to a tagger in chunks.
+ */
+public class SuggestSessionsResource extends Resource implements Gettable, Postable {
+	private final Tagger tagger;
+
+	public SuggestSessionsResource(ServletContext context, Tagger tagger) {
+		super(context);
+		this.tagger = tagger;
+	}
+
+	@Override
+	public String getURL() {
+		return getContextPath() + getRelativeSuggestSessionsURL(tagger);
+	}
+
+	@Override
+	public Response doGet(Request request) {
+		SuggestSessions sessions = tagger.getSessions();
+		JSONResponse r = request.okJSON();
+		r.getRoot().put("title", "Incremental Tag Suggestion Sessions for Tagger: " + tagger.getId());
+		r.getRoot().put("usage", "POST to open a session, optionally with 'engine=dictionary'; then POST chunks of text to the session's URL");
+		r.getRoot().put("open_sessions", sessions.size());
+		r.getRoot().put("expired_sessions", sessions.getExpiredCount());
+		r.getRoot().put("timeout_seconds", sessions.getTimeoutSeconds());
+		r.getRoot().put("max_sessions", sessions.getMaxSessions());
+		r.getRoot().put("rejected_sessions", sessions.getRejectedCount());
+		return r;
+	}
+
+	@Override
+	public Response doPost(Request request) {
+		String engine = request.get("engine");
+		boolean dictionary;
+		if (engine == null || "".equals(engine) || SuggestResource.ENGINE_MAUI.equals(engine)) {
+			if (!tagger.isTrained()) {
+				return request.badRequest(
+						"Tagger must be trained before Tag Suggestion Service can be used");
+			}
+			dictionary = false;
+		} else if (SuggestResource.ENGINE_DICTIONARY.equals(engine)) {
+			if (!tagger.hasVocabulary()) {
+				return request.badRequest(
+						"Tagger must have a vocabulary before the dictionary engine can be used");
+			}
+			dictionary = true;
+		} else {
+			return request.badRequest("engine", engine, 
+					"Engine must be '" + SuggestResource.ENGINE_MAUI + "' or '" + SuggestResource.ENGINE_DICTIONARY + "'");
+		}
+		SuggestSessions sessions = tagger.getSessions();
+		SuggestSession session = sessions.open(dictionary);
+		if (session == null) {
+			return request.serviceUnavailable(
+					"Too many open suggest sessions for tagger " + tagger.getId() + "; close unused sessions or try again later",
+					sessions.getSecondsUntilExpiry());
+		}
+		JSONResponse r = request.okJSON();
+		r.getRoot().put("title", "Opened suggest session for tagger: " + tagger.getId());
+		r.getRoot().put("href", getContextPath() + SuggestSessionResource.getRelativeSuggestSessionURL(tagger, session));
+		r.getRoot().setAll(session.toJSON());
+		return r;
+	}
+
+	public static String getRelativeSuggestSessionsURL(Tagger tagger) {
+		return SuggestResource.getRelativeSuggesterURL(tagger) + "/session";
+	}
+}
@@ -10,8 +10,10 @@ import org.topbraid.mauiserver.framework.Resource.Deletable;
 import org.topbraid.mauiserver.framework.Resource.Gettable;
 import org.topbraid.mauiserver.framework.Response;
 import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.tagger.MauiWrapperPool;
 import org.topbraid.mauiserver.tagger.Tagger;
 import org.topbraid.mauiserver.tagger.TaggerCollection;
+import org.topbraid.mauiserver.tagger.TaggerSnapshot;
 
 import com.entopix.maui.vocab.VocabularyStore;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -41,6 +43,7 @@ public class TaggerResource extends Resource implements Gettable, Deletable {
 		}
 		r.getRoot().put("id", tagger.getId());
 		r.getRoot().put("is_trained", tagger.isTrained());
+		r.getRoot().put("is_loading", tagger.isLoading());
 		r.getRoot().put("has_vocabulary", tagger.hasVocabulary());
 		if (tagger.hasVocabulary()) {
 			VocabularyStore store = tagger.getVocabularyMaui().getVocabularyStore();
@@ -50,13 +53,40 @@ public class TaggerResource extends Resource implements Gettable, Deletable {
 			stats.put("num_concepts_with_relationships", store.getNumRelatedTerms());
 			r.getRoot().set("vocab_stats", stats);
 		}
+		TaggerSnapshot snapshot = tagger.getSnapshotIfLoaded();
+		MauiWrapperPool pool = snapshot.getWrapperPool();
+		if (pool != null) {
+			r.getRoot().set("wrapper_pool", pool.toJSON());
+		}
+		if (tagger.getLastWarmup() != null) {
+			r.getRoot().set("warmup", tagger.getLastWarmup().toJSON());
+		}
+		r.getRoot().set("suggest_cache", tagger.getCacheStats().toJSON());
+		r.getRoot().set("suggest_coalescing", tagger.getCoalescer().toJSON());
+		ObjectNode deadlines = tagger.getDeadlineStats().toJSON();
+		deadlines.put("default_timeout_millis", tagger.getConfiguration().getSuggestTimeoutMillis());
+		r.getRoot().set("suggest_deadlines", deadlines);
+		ObjectNode concurrency = tagger.getConcurrencyLimiter().toJSON();
+		concurrency.put("enabled", tagger.getConfiguration().isAdaptiveConcurrency());
+		r.getRoot().set("concurrency_limit", concurrency);
+		r.getRoot().set("bulkhead", tagger.getBulkhead().toJSON());
+		r.getRoot().set("memory", tagger.getMemoryJSON());
+		try {
+			r.getRoot().set("stem_cache", tagger.getConfiguration().getStemmer().toJSON());
+		} catch (MauiServerException ex) {
+			// No stemmer for the configured language; nothing to report
+		}
+		r.getRoot().put("has_candidate_model", tagger.getShadowEvaluation() != null);
 		ObjectNode links = r.getRoot().objectNode();
 		links.put("home", getContextPath() + "/");
 		links.put("tagger", getContextPath() + TaggerResource.getRelativeTaggerURL(tagger));
 		links.put("config", getContextPath() + ConfigurationResource.getRelativeConfigurationURL(tagger));
 		links.put("vocab", getContextPath() + VocabularyResource.getRelativeVocabularyURL(tagger));
 		links.put("train", getContextPath() + TrainingResource.getRelativeTrainingURL(tagger));
+		links.put("train_candidate", getContextPath() + CandidateModelResource.getRelativeCandidateModelURL(tagger));
 		links.put("suggest", getContextPath() + SuggestResource.getRelativeSuggesterURL(tagger));
+		links.put("suggest_session", getContextPath() + SuggestSessionsResource.getRelativeSuggestSessionsURL(tagger));
+		links.put("suggest_batch", getContextPath() + BatchSuggestResource.getRelativeBatchSuggesterURL(tagger));
 		links.put("xvalidate", getContextPath() + CrossValidationResource.getRelativeCrossValidationURL(tagger));
 		r.getRoot().set("links", links);
 		return r;
@@ -1,5 +1,7 @@
 package org.topbraid.mauiserver;
 
+import java.io.File;
+
 import org.apache.jena.rdf.model.Model;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +22,8 @@ public class VocabularyResource extends Resource
 		implements Gettable, Puttable, Deletable {
 	private final static Logger log = LoggerFactory.getLogger(VocabularyResource.class);
 	
+	private final static String turtleContentType = "text/turtle;charset=utf-8";
+	
 	private Tagger tagger;
 
 	public VocabularyResource(ServletContext context, Tagger tagger) {
@@ -34,12 +38,12 @@ public class VocabularyResource extends Resource
 	
 	@Override
 	public Response doGet(Request request) {
-		Model vocabulary = tagger.getVocabularyJena();
+		// Served as stored, so the vocabulary doesn't have to be parsed
+		File vocabulary = tagger.getVocabularyFile();
 		if (vocabulary == null) {
 			return request.noContent();
 		}
-		vocabulary.setNsPrefix("skos", "http://www.w3.org/2004/02/skos/core#");
-		return request.okTurtle(vocabulary);
+		return request.okFile(vocabulary, turtleContentType);
 	}
 
 	@Override
@@ -59,7 +63,7 @@ public class VocabularyResource extends Resource
 				return request.badRequest("No resources of type skos:Concept found in input file");
 			}
 			tagger.setVocabulary(rdf, vocab);
-			return request.okTurtle(tagger.getVocabularyJena());
+			return doGet(request);
 		} catch (MauiServerException ex) {
 			return request.badRequest(ex.getMessage());
 		}
@@ -0,0 +1,56 @@
+package org.topbraid.mauiserver.framework;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that fails with a {@link PayloadTooLargeException}
+ * as soon as more than a given number of bytes has been read from it.
+ */
+public class LimitedInputStream extends FilterInputStream {
+	private final long maxBytes;
+	private long count = 0;
+
+	public LimitedInputStream(InputStream in, long maxBytes) {
+		super(in);
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int result = super.read();
+		if (result != -1) {
+			count(1);
+		}
+		return result;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int result = super.read(b, off, len);
+		if (result > 0) {
+			count(result);
+		}
+		return result;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long result = super.skip(n);
+		count(result);
+		return result;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void count(long bytes) {
+		count += bytes;
+		if (count > maxBytes) {
+			throw new PayloadTooLargeException(maxBytes);
+		}
+	}
+}
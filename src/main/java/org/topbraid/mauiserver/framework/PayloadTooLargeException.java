@@ -0,0 +1,14 @@
+package org.topbraid.mauiserver.framework;
+
+import org.topbraid.mauiserver.MauiServerException;
+
+/**
+ * Thrown when a request body exceeds the size that the resource accepts.
+ */
+@SuppressWarnings("serial")
+public class PayloadTooLargeException extends MauiServerException {
+
+	public PayloadTooLargeException(long maxBytes) {
+		super("Request body exceeds the maximum size of " + maxBytes + " bytes");
+	}
+}
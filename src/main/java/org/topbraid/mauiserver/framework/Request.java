@@ -1,11 +1,16 @@
 package org.topbraid.mauiserver.framework;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -17,10 +22,15 @@ import org.topbraid.mauiserver.MauiServerException;
 import org.topbraid.mauiserver.framework.Resource.Deletable;
 import org.topbraid.mauiserver.framework.Resource.Postable;
 import org.topbraid.mauiserver.framework.Resource.Puttable;
+import org.topbraid.mauiserver.framework.Response.FileResponse;
+import org.topbraid.mauiserver.framework.Response.JSONLinesResponse;
 import org.topbraid.mauiserver.framework.Response.JSONResponse;
+import org.topbraid.mauiserver.framework.Response.LineProducer;
 import org.topbraid.mauiserver.framework.Response.RDFResponse;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -51,11 +61,58 @@ public class Request {
 		return request.getParameter(key);
 	}
 	
+	/**
+	 * Gets a parameter from the query string only. Unlike {@link #get(String)},
+	 * this never reads a form-encoded request body.
+	 */
+	public String getFromQueryString(String key) {
+		String query = request.getQueryString();
+		if (query == null) return null;
+		for (String pair: query.split("&")) {
+			int eq = pair.indexOf('=');
+			try {
+				if (!key.equals(URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8))) continue;
+				return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+			} catch (IllegalArgumentException ex) {
+				// Malformed escape sequence; skip this pair
+			}
+		}
+		return null;
+	}
+	
+	public String getHeader(String name) {
+		return request.getHeader(name);
+	}
+	
+	/**
+	 * Gets a value stored for the duration of the request, for example
+	 * by a {@link Resource.Guarded} for use when the request is processed.
+	 */
+	public Object getAttribute(String name) {
+		return request.getAttribute(name);
+	}
+	
+	public void setAttribute(String name, Object value) {
+		request.setAttribute(name, value);
+	}
+	
 	/**
 	 * @return The request body parsed as JSON, or null if no request body was posted
 	 * @throws MauiServerException on JSON parse error 
 	 */
 	public JsonNode getBodyJSON() throws MauiServerException {
+		return getBodyJSON(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * @param maxBytes Maximum size of the body
+	 * @return The request body parsed as JSON, or null if no request body was posted
+	 * @throws PayloadTooLargeException if the body is larger than <code>maxBytes</code>;
+	 *         if the Content-Length header says so, this happens before anything is read
+	 * @throws MauiServerException on JSON parse error 
+	 */
+	public JsonNode getBodyJSON(long maxBytes) throws MauiServerException {
+		checkContentLength(maxBytes);
 		try {
 			// TODO Should support application/x-www-form-urlencoded on PUT. Servlets don't do that automatically. Is there some ready-made code for parsing form-encoded bodies?
 			if ("POST".equals(request.getMethod()) && 
@@ -64,7 +121,7 @@ public class Request {
 			}
 			InputStream in = getBodyInputStream();
 			if (in == null) return null;
-			return json.readTree(in);
+			return json.readTree(maxBytes == Long.MAX_VALUE ? in : new LimitedInputStream(in, maxBytes));
 		} catch (JsonProcessingException ex) {
 			throw new MauiServerException("Could not parse request body as JSON: " + ex.getMessage(), ex);
 		} catch (IOException ex) {
@@ -84,6 +141,104 @@ public class Request {
 		}
 	}
 	
+	/**
+	 * Reads the request body as text, straight from the input stream.
+	 * The buffer is sized according to the Content-Length header, if
+	 * present. The encoding is the request's charset, or UTF-8 by default.
+	 *
+	 * @param maxBytes Maximum size of the body
+	 * @return The request body, or null if no request body was posted
+	 * @throws PayloadTooLargeException if the body is larger than <code>maxBytes</code>;
+	 *         if the Content-Length header says so, this happens before anything is read
+	 */
+	public String getBodyText(int maxBytes) throws MauiServerException {
+		checkContentLength(maxBytes);
+		try {
+			InputStream in = getBodyInputStream();
+			if (in == null) return null;
+			long length = request.getContentLengthLong();
+			byte[] buffer = new byte[length >= 0 ? (int) length : Math.min(maxBytes, 8192)];
+			int size = 0;
+			while (true) {
+				if (size == buffer.length) {
+					// Buffer full; grow it unless we're at the end
+					int b = in.read();
+					if (b == -1) break;
+					if (size >= maxBytes) {
+						throw new PayloadTooLargeException(maxBytes);
+					}
+					buffer = Arrays.copyOf(buffer, (int) Math.min(maxBytes, Math.max(16, buffer.length * 2L)));
+					buffer[size++] = (byte) b;
+				}
+				int n = in.read(buffer, size, buffer.length - size);
+				if (n == -1) break;
+				size += n;
+			}
+			Charset charset = StandardCharsets.UTF_8;
+			if (request.getCharacterEncoding() != null) {
+				try {
+					charset = Charset.forName(request.getCharacterEncoding());
+				} catch (IllegalArgumentException ex) {
+					throw new MauiServerException("Unsupported charset: " + request.getCharacterEncoding());
+				}
+			}
+			return new String(buffer, 0, size, charset);
+		} catch (IOException ex) {
+			throw new MauiServerException("Could not read request body: " + ex.getMessage(), ex);
+		}
+	}
+	
+	/**
+	 * Reads a single string field from a JSON object in the request body,
+	 * using a streaming parser, without building a tree of the entire body.
+	 * Reading stops as soon as the field has been found.
+	 *
+	 * @param maxBytes Maximum size of the body
+	 * @return The field's value, or null if no request body was posted or it has no such string field
+	 * @throws PayloadTooLargeException if the body is larger than <code>maxBytes</code>
+	 */
+	public String getBodyJSONField(String field, int maxBytes) throws MauiServerException {
+		checkContentLength(maxBytes);
+		try {
+			InputStream in = getBodyInputStream();
+			if (in == null) return null;
+			try (JsonParser parser = json.getFactory().createParser(new LimitedInputStream(in, maxBytes))) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					throw new MauiServerException("Request body must be a JSON object");
+				}
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String name = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if (field.equals(name) && value == JsonToken.VALUE_STRING) {
+						return parser.getText();
+					}
+					parser.skipChildren();
+				}
+				return null;
+			}
+		} catch (JsonProcessingException ex) {
+			throw new MauiServerException("Could not parse request body as JSON: " + ex.getMessage(), ex);
+		} catch (IOException ex) {
+			throw new MauiServerException("Could not read request body: " + ex.getMessage(), ex);
+		}
+	}
+	
+	/**
+	 * @throws PayloadTooLargeException if the Content-Length header announces a body larger than <code>maxBytes</code>
+	 */
+	public void checkContentLength(long maxBytes) throws PayloadTooLargeException {
+		if (request.getContentLengthLong() > maxBytes) {
+			throw new PayloadTooLargeException(maxBytes);
+		}
+	}
+	
+	/**
+	 * @param mediaType A media type in lower case, without parameters
+	 */
+	public boolean hasContentType(String mediaType) {
+		return mediaType.equals(getContentType());
+	}
+	
 	/**
 	 * @return The request body parsed as RDF, or null if no request body was posted
 	 * @throws MauiServerException on RDF parse error 
@@ -156,12 +311,24 @@ public class Request {
 	}
 	
 
+	public JSONLinesResponse okJSONLines(LineProducer producer) {
+		JSONLinesResponse result = new JSONLinesResponse(response, json, producer);
+		result.setStatus(HttpServletResponse.SC_OK);
+		return result;
+	}
+
 	public RDFResponse okTurtle(Model model) {
 		RDFResponse result = new RDFResponse(response, model);
 		result.setStatus(HttpServletResponse.SC_OK);
 		return result;
 	}
 	
+	public FileResponse okFile(File file, String contentType) {
+		FileResponse result = new FileResponse(response, file, contentType);
+		result.setStatus(HttpServletResponse.SC_OK);
+		return result;
+	}
+	
 	public Response noContent() {
 		return new Response(response) {
 			// Override so we prevent sending the body
@@ -242,6 +409,27 @@ public class Request {
 		return r;
 	}
 	
+	public Response payloadTooLarge(String message) {
+		JSONResponse r = respondJSON(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+		r.getRoot().put("message", message);
+		return r;
+	}
+	
+	public Response serviceUnavailable(String message) {
+		JSONResponse r = respondJSON(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		r.getRoot().put("message", message);
+		return r;
+	}
+	
+	/**
+	 * @param retryAfterSeconds Sent in the <code>Retry-After</code> header
+	 */
+	public Response serviceUnavailable(String message, int retryAfterSeconds) {
+		Response r = serviceUnavailable(message);
+		r.setHeader("Retry-After", Integer.toString(retryAfterSeconds));
+		return r;
+	}
+	
 	public Response conflict(String error) {
 		JSONResponse r = respondJSON(HttpServletResponse.SC_CONFLICT);
 		r.getRoot().put("message", error);
@@ -30,4 +30,21 @@ public abstract class Resource {
 	public interface Deletable {
 		Response doDelete(Request request);
 	}
+
+	/**
+	 * A resource that may turn requests away when it is too busy.
+	 * {@link RootServlet} asks for admission before dispatching the
+	 * request, and before the request body is read.
+	 */
+	public interface Guarded {
+		/**
+		 * @return An admission to release after the response has been sent, or <code>null</code> if the request doesn't need one
+		 * @throws ServiceUnavailableException if the request is rejected
+		 */
+		Admission admit(Request request) throws ServiceUnavailableException;
+	}
+
+	public interface Admission {
+		void release();
+	}
 }
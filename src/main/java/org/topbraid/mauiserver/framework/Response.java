@@ -1,6 +1,13 @@
 package org.topbraid.mauiserver.framework;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
@@ -8,6 +15,7 @@ import org.apache.jena.shared.JenaException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -102,6 +110,57 @@ public abstract class Response {
 		}
 	}
 	
+	/**
+	 * A response in JSON Lines format. The lines are not buffered, but
+	 * are produced by a {@link LineProducer} while the response is being
+	 * sent, and are flushed to the client one by one.
+	 */
+	public static class JSONLinesResponse extends Response {
+		private final ObjectMapper json;
+		private final LineProducer producer;
+		private int lineCount = 0;
+		
+		public JSONLinesResponse(HttpServletResponse response, ObjectMapper json, LineProducer producer) {
+			super(response);
+			this.json = json;
+			this.producer = producer;
+		}
+		
+		@Override
+		public void send() throws IOException {
+			super.send();
+			http.setContentType("application/jsonl;charset=utf-8");
+			final OutputStream out = http.getOutputStream();
+			try {
+				producer.produce(new LineWriter() {
+					@Override
+					public void write(JsonNode line) throws IOException {
+						out.write(json.writeValueAsBytes(line));
+						out.write('\n');
+						out.flush();
+						lineCount++;
+					}
+				});
+			} catch (IOException ex) {
+				// Probably the client disconnected
+				log.warn("Failed to write response, possibly due to client closing the connection: " + ex.getMessage());
+			}
+		}
+
+		@Override
+		public String getSummary() {
+			return super.getSummary() + ", jsonl (" + lineCount + " lines)"; 
+		}
+	}
+	
+	public interface LineWriter {
+		void write(JsonNode line) throws IOException;
+	}
+	
+	public interface LineProducer {
+		void produce(LineWriter out) throws IOException;
+	}
+	
 	public static class RDFResponse extends Response {
 		private final Model model;
 		
@@ -136,6 +195,50 @@ public abstract class Response {
 		}
 	}
 	
+	/**
+	 * Streams a file as it is stored, without parsing it. The file is
+	 * opened once, so that length and content are consistent even if the
+	 * file is replaced at the same time, as long as it is replaced by
+	 * moving another file into its place rather than rewriting it.
+	 */
+	public static class FileResponse extends Response {
+		private final File file;
+		private final String contentType;
+		
+		public FileResponse(HttpServletResponse response, File file, String contentType) {
+			super(response);
+			this.file = file;
+			this.contentType = contentType;
+		}
+		
+		@Override
+		public void send() throws IOException {
+			super.send();
+			FileChannel channel;
+			try {
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			} catch (NoSuchFileException ex) {
+				// Deleted since the response was created
+				http.setStatus(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			try (FileChannel in = channel) {
+				http.setContentType(contentType);
+				http.setContentLengthLong(in.size());
+				InputStream stream = Channels.newInputStream(in);
+				stream.transferTo(http.getOutputStream());
+			} catch (IOException ex) {
+				// Probably the client disconnected
+				log.warn("Failed to write response, possibly due to client closing the connection: " + ex.getMessage());
+			}
+		}
+
+		@Override
+		public String getSummary() {
+			return super.getSummary() + ", " + file.getName() + " (" + file.length() + "b)"; 
+		}
+	}
+	
 	public static String getStatusText(int code) {
 		if (code == 100) return "Continue";
 		if (code == 101) return "Switching Protocols";
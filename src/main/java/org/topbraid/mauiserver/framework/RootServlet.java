@@ -5,8 +5,10 @@ import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.topbraid.mauiserver.MauiServer;
+import org.topbraid.mauiserver.framework.Resource.Admission;
 import org.topbraid.mauiserver.framework.Resource.Deletable;
 import org.topbraid.mauiserver.framework.Resource.Gettable;
+import org.topbraid.mauiserver.framework.Resource.Guarded;
 import org.topbraid.mauiserver.framework.Resource.Postable;
 import org.topbraid.mauiserver.framework.Resource.Puttable;
 
@@ -58,16 +60,28 @@ public class RootServlet extends HttpServlet {
 			throws IOException {
 		Request request = createRequest(req, resp);
 		Response response = null;
+		Admission admission = null;
 		String requestURI = getLocalRequestUriWithoutQuery(req);
 		log.debug(req.getMethod() + " " + requestURI);
 		try {
 			Resource resource = getServer(req.getServletContext()).getResource(requestURI, req.getServletContext());
+			if (resource instanceof Guarded) {
+				// Before the body is read, so that rejecting a request is cheap
+				admission = ((Guarded) resource).admit(request);
+			}
 			response = createResponse(request, resource);
+		} catch (ServiceUnavailableException ex) {
+			response = request.serviceUnavailable(ex.getMessage(), ex.getRetryAfterSeconds());
 		} catch (Exception ex) {
 			log.error("Uncaught exception in servlet", ex);
 			response = request.serverError(ex);
 		}
-		response.send();
+		try {
+			response.send();
+		} finally {
+			// Streaming responses do their work while being sent
+			if (admission != null) admission.release();
+		}
 		log.info(req.getMethod() + " " + requestURI + 
 				(response == null ? "" : " " + response.getSummary()));
 	}
@@ -0,0 +1,23 @@
+package org.topbraid.mauiserver.framework;
+
+import org.topbraid.mauiserver.MauiServerException;
+
+/**
+ * Thrown when a resource turns a request away because it is too busy.
+ */
+@SuppressWarnings("serial")
+public class ServiceUnavailableException extends MauiServerException {
+	private final int retryAfterSeconds;
+
+	/**
+	 * @param retryAfterSeconds Sent to the client in the <code>Retry-After</code> header
+	 */
+	public ServiceUnavailableException(String message, int retryAfterSeconds) {
+		super(message);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
@@ -112,7 +112,25 @@ public class TaggerStore {
 		// We change the file extension when the Maui binary format changes.
 		// This is a simple way to force re-training when the existing model
 		// can no longer be read.
-		return new MauiModelStore(taggerId, getTaggerFile(taggerId, "model.maui14"));
+		return new MauiModelStore(taggerId, getMauiModelFile(taggerId));
+	}
+	
+	public File getMauiModelFile(String taggerId) {
+		return getTaggerFile(taggerId, "model.maui14");
+	}
+	
+	/**
+	 * A newly trained model that is being evaluated before it replaces the one in {@link #getMauiModelStore(String)}.
+	 */
+	public ObjectStore<MauiFilter> getCandidateModelStore(String taggerId) {
+		return new MauiModelStore(taggerId, getTaggerFile(taggerId, "candidate.maui14"));
+	}
+	
+	/**
+	 * Documents from the last training corpus, used to warm up newly loaded models.
+	 */
+	public ObjectStore<List<String>> getWarmupSampleStore(String taggerId) {
+		return new WarmupSampleStore(taggerId, getTaggerFile(taggerId, "warmup-sample.json"));
 	}
 	
 	public ObjectStore<JobReport> getTrainerReportStore(String taggerId) {
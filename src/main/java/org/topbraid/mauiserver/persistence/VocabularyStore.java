@@ -3,6 +3,9 @@ package org.topbraid.mauiserver.persistence;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.shared.JenaException;
@@ -27,12 +30,24 @@ public class VocabularyStore extends FileStore<Model> {
 		}
 	}
 
+	/**
+	 * Writes to a temporary file first and then moves it into place, so
+	 * that the vocabulary file, which is served as it is, is never seen
+	 * half-written.
+	 */
 	@Override
 	protected void write(Model vocabulary) throws IOException {
+		File temp = File.createTempFile(getFileName(), ".tmp", getFile().getParentFile());
 		try {
-			vocabulary.write(new FileOutputStream(getFile()), "TURTLE");
+			try (OutputStream out = new FileOutputStream(temp)) {
+				vocabulary.write(out, "TURTLE");
+			}
+			Files.move(temp.toPath(), getFile().toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
 		} catch (JenaException ex) {
 			throwException("Error writing to", ex);
+		} finally {
+			temp.delete();
 		}
 	}
 }
@@ -0,0 +1,38 @@
+package org.topbraid.mauiserver.persistence;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class WarmupSampleStore extends JSONFileStore<List<String>> {
+	private static final String fieldDocuments = "documents";
+
+	public WarmupSampleStore(String taggerId, File sampleFile) {
+		super(taggerId, sampleFile);
+	}
+
+	@Override
+	protected List<String> decode(ObjectNode json) {
+		List<String> result = new ArrayList<String>();
+		if (!json.has(fieldDocuments)) return result;
+		for (JsonNode text: json.get(fieldDocuments)) {
+			result.add(text.asText());
+		}
+		return result;
+	}
+
+	@Override
+	protected JsonNode encode(List<String> texts) {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		ArrayNode documents = result.putArray(fieldDocuments);
+		for (String text: texts) {
+			documents.add(text);
+		}
+		return result;
+	}
+}
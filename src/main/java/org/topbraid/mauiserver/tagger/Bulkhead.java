@@ -0,0 +1,291 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Bounds the number of suggest requests for one tagger that are in
+ * progress at the same time, and the number waiting for a turn, so that
+ * a burst of traffic to one tagger cannot tie up all of the servlet
+ * container's threads and starve the other taggers. Requests that find
+ * the queue full are rejected immediately; requests waiting in the queue
+ * give up when their deadline passes.
+ * <p>
+ * Requests come in two {@link Lane}s with separate queues. A share of the
+ * places is reserved for interactive requests; bulk requests only get
+ * the rest. When a place frees up and both lanes have requests waiting,
+ * the next request is chosen by smooth weighted round-robin, so that
+ * interactive requests get <code>interactiveWeight</code> turns for every
+ * turn of a bulk request.
+ */
+public class Bulkhead {
+
+	public enum Lane {
+		INTERACTIVE, BULK;
+
+		public static Lane fromString(String name) {
+			return EnumNames.fromString(Lane.class, name);
+		}
+	}
+
+	// All fields guarded by this
+	private final LaneState interactive = new LaneState(Lane.INTERACTIVE);
+	private final LaneState bulk = new LaneState(Lane.BULK);
+	private int maxInFlight;
+	private int maxQueued;
+	private int bulkMaxInFlight;
+	private int interactiveWeight;
+	private int interactiveCredit = 0;
+	private int bulkCredit = 0;
+	private int inFlight = 0;
+
+	public Bulkhead(int maxInFlight, int maxQueued, double interactiveShare, int interactiveWeight) {
+		setLimits(maxInFlight, maxQueued, interactiveShare, interactiveWeight);
+	}
+
+	/**
+	 * Changes the limits. Requests already in progress are not affected.
+	 *
+	 * @param maxQueued Maximum number of requests waiting, per lane
+	 * @param interactiveShare Share of <code>maxInFlight</code> reserved for interactive requests; at least one place is always left for bulk requests
+	 * @param interactiveWeight Turns of the interactive lane for each turn of the bulk lane
+	 */
+	public synchronized void setLimits(int maxInFlight, int maxQueued, double interactiveShare, int interactiveWeight) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+		this.maxQueued = Math.max(0, maxQueued);
+		int reserved = (int) Math.ceil(this.maxInFlight * Math.max(0, Math.min(1, interactiveShare)));
+		this.bulkMaxInFlight = Math.max(1, this.maxInFlight - reserved);
+		this.interactiveWeight = Math.max(1, interactiveWeight);
+		dispatch();
+	}
+
+	/**
+	 * Enters the bulkhead, waiting in the lane's queue if no place is
+	 * free. Every ticket must be released with {@link Ticket#exit()}.
+	 *
+	 * @param deadline Limits the time spent waiting in the queue
+	 * @return A ticket, or <code>null</code> if the queue is full, or the
+	 *         deadline has passed or has been cancelled before the request's
+	 *         turn came
+	 */
+	public synchronized Ticket enter(Lane lane, Deadline deadline) {
+		LaneState state = getState(lane);
+		if (!canStart(state) && state.waiting.size() >= maxQueued) {
+			state.rejected++;
+			return null;
+		}
+		Waiter waiter = new Waiter();
+		state.waiting.addLast(waiter);
+		dispatch();
+		try {
+			while (!waiter.admitted) {
+				if (deadline.isExpired() || deadline.isCancelled()) {
+					state.waiting.remove(waiter);
+					state.expired++;
+					return null;
+				}
+				long remainingMillis = deadline.isLimited() ?
+						Math.max(1, deadline.getRemainingNanos() / 1000000) : 0;
+				wait(remainingMillis);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			deadline.cancel();
+			if (waiter.admitted) {
+				// Too late to back out
+				return new Ticket(state);
+			}
+			state.waiting.remove(waiter);
+			state.expired++;
+			return null;
+		}
+		return new Ticket(state);
+	}
+
+	/**
+	 * Admits waiting requests while there are free places.
+	 */
+	private void dispatch() {
+		boolean admitted = false;
+		while (inFlight < maxInFlight) {
+			boolean interactiveReady = !interactive.waiting.isEmpty();
+			boolean bulkReady = !bulk.waiting.isEmpty() && bulk.inFlight < bulkMaxInFlight;
+			LaneState next;
+			if (interactiveReady && bulkReady) {
+				next = pickWeighted();
+			} else if (interactiveReady) {
+				next = interactive;
+			} else if (bulkReady) {
+				next = bulk;
+			} else {
+				break;
+			}
+			Waiter waiter = next.waiting.removeFirst();
+			waiter.admitted = true;
+			next.start(System.nanoTime() - waiter.enqueuedNanos);
+			inFlight++;
+			admitted = true;
+		}
+		if (admitted) notifyAll();
+	}
+
+	private LaneState pickWeighted() {
+		interactiveCredit += interactiveWeight;
+		bulkCredit += 1;
+		if (interactiveCredit >= bulkCredit) {
+			interactiveCredit -= interactiveWeight + 1;
+			return interactive;
+		}
+		bulkCredit -= interactiveWeight + 1;
+		return bulk;
+	}
+
+	private boolean canStart(LaneState state) {
+		return inFlight < maxInFlight && state.waiting.isEmpty() && state.inFlight < getMaxInFlight(state.lane);
+	}
+
+	private int getMaxInFlight(Lane lane) {
+		return lane == Lane.BULK ? bulkMaxInFlight : maxInFlight;
+	}
+
+	private LaneState getState(Lane lane) {
+		return lane == Lane.BULK ? bulk : interactive;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized int getInFlight(Lane lane) {
+		return getState(lane).inFlight;
+	}
+
+	public synchronized int getQueued() {
+		return interactive.waiting.size() + bulk.waiting.size();
+	}
+
+	public synchronized int getQueued(Lane lane) {
+		return getState(lane).waiting.size();
+	}
+
+	/**
+	 * Whether a new request in the lane would be rejected right now
+	 */
+	public synchronized boolean isFull(Lane lane) {
+		LaneState state = getState(lane);
+		return !canStart(state) && state.waiting.size() >= maxQueued;
+	}
+
+	/**
+	 * Whether a new interactive request would be rejected right now
+	 */
+	public boolean isFull() {
+		return isFull(Lane.INTERACTIVE);
+	}
+
+	public synchronized long getRejectedCount() {
+		return interactive.rejected + bulk.rejected;
+	}
+
+	public synchronized ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("in_flight", inFlight);
+		result.put("queued", getQueued());
+		result.put("max_in_flight", maxInFlight);
+		result.put("max_queued", maxQueued);
+		result.put("accepting", !isFull());
+		result.put("accepted", interactive.accepted + bulk.accepted);
+		result.put("rejected", interactive.rejected + bulk.rejected);
+		result.put("expired_in_queue", interactive.expired + bulk.expired);
+		ObjectNode lanes = result.putObject("lanes");
+		lanes.set(EnumNames.toString(Lane.INTERACTIVE), interactive.toJSON());
+		lanes.set(EnumNames.toString(Lane.BULK), bulk.toJSON());
+		return result;
+	}
+
+	/**
+	 * A place in the bulkhead, held by one request.
+	 */
+	public class Ticket {
+		private final LaneState state;
+		private final long startNanos = System.nanoTime();
+		private boolean exited = false;
+
+		private Ticket(LaneState state) {
+			this.state = state;
+		}
+
+		public Lane getLane() {
+			return state.lane;
+		}
+
+		/**
+		 * Leaves the bulkhead, letting the next request in. Only the first call has an effect.
+		 */
+		public void exit() {
+			synchronized (Bulkhead.this) {
+				if (exited) return;
+				exited = true;
+				state.finish(System.nanoTime() - startNanos);
+				inFlight--;
+				dispatch();
+			}
+		}
+	}
+
+	private static class Waiter {
+		final long enqueuedNanos = System.nanoTime();
+		boolean admitted = false;
+	}
+
+	private class LaneState {
+		final Lane lane;
+		final Deque<Waiter> waiting = new ArrayDeque<Waiter>();
+		int inFlight = 0;
+		long accepted = 0;
+		long rejected = 0;
+		long expired = 0;
+		long completed = 0;
+		long totalQueueNanos = 0;
+		long maxQueueNanos = 0;
+		long totalLatencyNanos = 0;
+		long maxLatencyNanos = 0;
+
+		LaneState(Lane lane) {
+			this.lane = lane;
+		}
+
+		void start(long queueNanos) {
+			inFlight++;
+			accepted++;
+			totalQueueNanos += queueNanos;
+			maxQueueNanos = Math.max(maxQueueNanos, queueNanos);
+		}
+
+		void finish(long latencyNanos) {
+			this.inFlight--;
+			completed++;
+			totalLatencyNanos += latencyNanos;
+			maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+		}
+
+		ObjectNode toJSON() {
+			ObjectNode result = JsonNodeFactory.instance.objectNode();
+			result.put("in_flight", inFlight);
+			result.put("max_in_flight", getMaxInFlight(lane));
+			result.put("queued", waiting.size());
+			result.put("accepting", !isFull(lane));
+			result.put("accepted", accepted);
+			result.put("rejected", rejected);
+			result.put("expired_in_queue", expired);
+			result.put("avg_queue_millis", accepted == 0 ? 0 : totalQueueNanos / 1e6 / accepted);
+			result.put("max_queue_millis", maxQueueNanos / 1e6);
+			result.put("avg_latency_millis", completed == 0 ? 0 : totalLatencyNanos / 1e6 / completed);
+			result.put("max_latency_millis", maxLatencyNanos / 1e6);
+			return result;
+		}
+	}
+}
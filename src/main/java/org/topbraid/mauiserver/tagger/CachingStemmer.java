@@ -0,0 +1,106 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.io.ObjectStreamException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.entopix.maui.stemmers.Stemmer;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A thread-safe stemmer that remembers the stems of recently seen tokens.
+ * Maui's stemmers are not thread-safe, so the wrapped stemmer is only used
+ * by one thread at a time, when a token is not in the cache. The cache is
+ * bounded: it has two generations, and when the current one is full, the
+ * previous one is dropped. Tokens found in the previous generation move to
+ * the current one, so frequent tokens stay cached.
+ * <p>
+ * Instances are shared via {@link LanguageProcessors}. They are not
+ * stored in models: the wrapped stemmer is serialized in their place, so
+ * stored models don't depend on this class, and {@link MauiWrapperPool}
+ * puts the shared instance back into models when they are loaded.
+ */
+public class CachingStemmer extends Stemmer {
+	private static final long serialVersionUID = 1L;
+
+	private final Stemmer stemmer;
+	private final transient int maxEntries;
+	private transient volatile Map<String, String> current;
+	private transient volatile Map<String, String> previous;
+	private final transient AtomicLong hits = new AtomicLong();
+	private final transient AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxEntries Approximate maximum number of cached tokens; 0 disables the cache
+	 */
+	public CachingStemmer(Stemmer stemmer, int maxEntries) {
+		this.stemmer = stemmer;
+		this.maxEntries = Math.max(0, maxEntries);
+		this.current = new ConcurrentHashMap<String, String>();
+		this.previous = new ConcurrentHashMap<String, String>();
+	}
+
+	public Class<? extends Stemmer> getStemmerClass() {
+		return stemmer.getClass();
+	}
+
+	@Override
+	public String stem(String token) {
+		Map<String, String> cur = current;
+		String result = cur.get(token);
+		if (result != null) {
+			hits.incrementAndGet();
+			return result;
+		}
+		result = previous.get(token);
+		if (result != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			synchronized (stemmer) {
+				result = stemmer.stem(token);
+			}
+			if (maxEntries == 0) return result;
+		}
+		if (cur.size() >= Math.max(1, maxEntries / 2)) {
+			synchronized (this) {
+				if (current == cur) {
+					previous = cur;
+					current = new ConcurrentHashMap<String, String>();
+				}
+			}
+		}
+		current.put(token, result);
+		return result;
+	}
+
+	/**
+	 * Writes the wrapped stemmer instead.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return stemmer;
+	}
+
+	/**
+	 * Resolves to the shared instance for the wrapped stemmer's class,
+	 * for models that were stored with a caching stemmer.
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		return LanguageProcessors.getStemmer(stemmer.getClass().getName());
+	}
+
+	public ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		long h = hits.get();
+		long m = misses.get();
+		result.put("stemmer_class", stemmer.getClass().getName());
+		result.put("hits", h);
+		result.put("misses", m);
+		result.put("hit_rate", h + m == 0 ? 0 : (double) h / (h + m));
+		result.put("entries", current.size() + previous.size());
+		result.put("max_entries", maxEntries);
+		return result;
+	}
+}
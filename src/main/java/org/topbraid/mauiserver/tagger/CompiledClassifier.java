@@ -0,0 +1,491 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.topbraid.mauiserver.MauiServerException;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import weka.classifiers.Classifier;
+import weka.core.Capabilities;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * The classifier of a trained Maui model, compiled from Weka's object
+ * graph into flat arrays of primitives. Maui scores every candidate
+ * phrase with the classifier; the compiled form walks the trees without
+ * virtual calls, boxing or allocation, except for the returned array.
+ * <p>
+ * Supports what {@link com.entopix.maui.main.MauiModelBuilder} produces:
+ * bagged J48 trees with numeric splits, or a single J48 tree. The
+ * structure of the trees is read from Weka's internal fields, and the
+ * distribution of each leaf is obtained by running the original tree on an
+ * instance that ends up in that leaf, so the compiled classifier produces
+ * exactly the same probabilities. Instances with missing values are
+ * passed to the original classifier, which is kept for this purpose.
+ * <p>
+ * Compiled classifiers are not serializable. Models are stored with
+ * their original classifier, and compiled when they are loaded, with
+ * {@link #install(MauiFilter, CompiledClassifier)}, so that the stored model doesn't carry
+ * the classifier in both forms.
+ */
+public class CompiledClassifier implements Classifier {
+
+	private final static String classBagging = "weka.classifiers.meta.Bagging";
+	private final static String classJ48 = "weka.classifiers.trees.J48";
+	private final static String classC45Split = "weka.classifiers.trees.j48.C45Split";
+
+	/**
+	 * Tolerance of Weka's comparisons; J48 sends values up to this much
+	 * larger than the split point to the left branch.
+	 */
+	private final static double small = 1e-6;
+
+	private final Classifier original;
+	// Set by build(); the arrays are never modified afterwards, and may be shared
+	private boolean bagged;
+	private int numClasses;
+	private int[] roots;
+	// Per node; attribute is -1 for leaves
+	private int[] attribute;
+	private double[] splitPoint;
+	private int[] left;
+	private int[] right;
+	// numClasses values per node; only set for leaves
+	private double[] distribution;
+	private int leafCount;
+	private Instances header;
+
+	private CompiledClassifier(Classifier original) {
+		this.original = original;
+	}
+
+	/**
+	 * Shares the compiled trees of another compiled classifier, but falls
+	 * back to a different copy of the original classifier.
+	 */
+	private CompiledClassifier(Classifier original, CompiledClassifier compiled) {
+		this.original = original;
+		this.bagged = compiled.bagged;
+		this.numClasses = compiled.numClasses;
+		this.roots = compiled.roots;
+		this.attribute = compiled.attribute;
+		this.splitPoint = compiled.splitPoint;
+		this.left = compiled.left;
+		this.right = compiled.right;
+		this.distribution = compiled.distribution;
+		this.leafCount = compiled.leafCount;
+		this.header = compiled.header;
+	}
+
+	/**
+	 * Compiles the classifier of a trained Maui model.
+	 *
+	 * @throws MauiServerException if the model's classifier is of an unsupported kind
+	 */
+	public static CompiledClassifier compile(MauiFilter model) {
+		Object classifier = getField(model, "classifier");
+		if (classifier instanceof CompiledClassifier) {
+			throw new MauiServerException("Classifier is already compiled");
+		}
+		if (!(classifier instanceof Classifier)) {
+			throw new MauiServerException("Model has no trained classifier");
+		}
+		return compile((Classifier) classifier);
+	}
+
+	/**
+	 * Replaces the classifier of a model, which must be an original
+	 * classifier, by a compiled one. The compiled trees are shared with
+	 * <code>compiled</code>, if given, which must have been compiled from
+	 * an identical copy of the model.
+	 *
+	 * @param compiled A classifier compiled from a copy of the model, or <code>null</code> to compile
+	 * @return The installed classifier
+	 * @throws MauiServerException if the model's classifier is of an unsupported kind
+	 */
+	public static CompiledClassifier install(MauiFilter model, CompiledClassifier compiled) {
+		CompiledClassifier result;
+		if (compiled == null) {
+			result = compile(model);
+		} else {
+			Object classifier = getField(model, "classifier");
+			if (!(classifier instanceof Classifier) || classifier instanceof CompiledClassifier) {
+				throw new MauiServerException("Model has no original classifier");
+			}
+			result = new CompiledClassifier((Classifier) classifier, compiled);
+		}
+		model.setClassifier(result);
+		return result;
+	}
+
+	/**
+	 * @throws MauiServerException if the classifier is of an unsupported kind
+	 */
+	public static CompiledClassifier compile(Classifier classifier) {
+		CompiledClassifier result = new CompiledClassifier(classifier);
+		result.build();
+		return result;
+	}
+
+	/**
+	 * Compiles the original classifier into arrays.
+	 */
+	private void build() {
+		Object[] trees;
+		boolean bagged;
+		if (classBagging.equals(original.getClass().getName())) {
+			trees = (Object[]) getField(original, "m_Classifiers");
+			bagged = true;
+		} else {
+			trees = new Object[]{original};
+			bagged = false;
+		}
+		if (trees == null || trees.length == 0) {
+			throw new MauiServerException("Classifier has no trees");
+		}
+		Builder builder = new Builder();
+		Instances header = null;
+		for (Object tree: trees) {
+			if (!classJ48.equals(tree.getClass().getName())) {
+				throw new MauiServerException("Unsupported classifier: " + tree.getClass().getName());
+			}
+			Object root = getField(tree, "m_root");
+			if (header == null) {
+				header = (Instances) getField(root, "m_train");
+				if (header == null || header.classIndex() < 0) {
+					throw new MauiServerException("Classifier has no dataset header");
+				}
+			}
+			builder.roots.add(builder.addTree(root, header));
+		}
+		this.bagged = bagged;
+		this.header = header;
+		this.numClasses = header.numClasses();
+		this.roots = builder.roots.stream().mapToInt(Integer::intValue).toArray();
+		this.attribute = Arrays.copyOf(builder.attribute, builder.size);
+		this.splitPoint = Arrays.copyOf(builder.splitPoint, builder.size);
+		this.left = Arrays.copyOf(builder.left, builder.size);
+		this.right = Arrays.copyOf(builder.right, builder.size);
+		this.distribution = new double[builder.size * numClasses];
+		this.leafCount = builder.leafCount;
+		computeLeafDistributions(trees);
+	}
+
+	/**
+	 * Obtains the distribution of each leaf from the original trees.
+	 */
+	private void computeLeafDistributions(Object[] trees) {
+		double[] lower = new double[header.numAttributes()];
+		double[] upper = new double[header.numAttributes()];
+		for (int t = 0; t < roots.length; t++) {
+			Arrays.fill(lower, Double.NEGATIVE_INFINITY);
+			Arrays.fill(upper, Double.POSITIVE_INFINITY);
+			computeLeafDistributions((Classifier) trees[t], roots[t], roots[t], lower, upper);
+		}
+	}
+
+	private void computeLeafDistributions(Classifier tree, int root, int node, double[] lower, double[] upper) {
+		int a = attribute[node];
+		if (a == -1) {
+			double[] values = new double[lower.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = probeValue(lower[i], upper[i]);
+			}
+			values[header.classIndex()] = Double.NaN;
+			// Leaves that no instance can reach keep an all-zero distribution
+			if (walk(root, values) != node) return;
+			double[] probs;
+			try {
+				probs = tree.distributionForInstance(createInstance(values));
+			} catch (Exception ex) {
+				throw new MauiServerException("Error running classifier: " + ex.getMessage(), ex);
+			}
+			System.arraycopy(probs, 0, distribution, node * numClasses, numClasses);
+			return;
+		}
+		double oldUpper = upper[a];
+		upper[a] = Math.min(oldUpper, splitPoint[node]);
+		computeLeafDistributions(tree, root, left[node], lower, upper);
+		upper[a] = oldUpper;
+		double oldLower = lower[a];
+		lower[a] = Math.max(oldLower, splitPoint[node]);
+		computeLeafDistributions(tree, root, right[node], lower, upper);
+		lower[a] = oldLower;
+	}
+
+	/**
+	 * A value that goes right at a split on <code>lower</code>
+	 * and left at a split on <code>upper</code>, if there is one.
+	 */
+	private static double probeValue(double lower, double upper) {
+		if (upper != Double.POSITIVE_INFINITY) return upper;
+		if (lower != Double.NEGATIVE_INFINITY) return Math.max(lower + 2 * small, Math.nextUp(lower));
+		return 0;
+	}
+
+	private Instance createInstance(double[] values) {
+		Instance instance = new DenseInstance(1.0, values);
+		instance.setDataset(header);
+		return instance;
+	}
+
+	/**
+	 * @return The leaf reached from the root, or -1 if a value on the way is missing
+	 */
+	private int walk(int node, double[] values) {
+		while (attribute[node] != -1) {
+			double value = values[attribute[node]];
+			if (Double.isNaN(value)) return -1;
+			node = goesLeft(value, splitPoint[node]) ? left[node] : right[node];
+		}
+		return node;
+	}
+
+	private int walk(int node, Instance instance) {
+		while (attribute[node] != -1) {
+			int a = attribute[node];
+			if (instance.isMissing(a)) return -1;
+			node = goesLeft(instance.value(a), splitPoint[node]) ? left[node] : right[node];
+		}
+		return node;
+	}
+
+	// Same as Weka's Utils.smOrEq(), as used by C45Split
+	private static boolean goesLeft(double value, double splitPoint) {
+		return value - splitPoint < small || value <= splitPoint;
+	}
+
+	@Override
+	public double[] distributionForInstance(Instance instance) throws Exception {
+		double[] sums = new double[numClasses];
+		for (int t = 0; t < roots.length; t++) {
+			int leaf = walk(roots[t], instance);
+			if (leaf == -1) {
+				return original.distributionForInstance(instance);
+			}
+			int offset = leaf * numClasses;
+			for (int c = 0; c < numClasses; c++) {
+				sums[c] += distribution[offset + c];
+			}
+		}
+		if (!bagged) return sums;
+		// Same arithmetic as Weka's Bagging
+		double sum = 0;
+		for (int c = 0; c < numClasses; c++) {
+			sum += sums[c];
+		}
+		if (sum < small && -sum < small) return sums;
+		for (int c = 0; c < numClasses; c++) {
+			sums[c] /= sum;
+		}
+		return sums;
+	}
+
+	@Override
+	public double classifyInstance(Instance instance) throws Exception {
+		double[] dist = distributionForInstance(instance);
+		double max = 0;
+		int maxIndex = 0;
+		for (int i = 0; i < dist.length; i++) {
+			if (dist[i] > max) {
+				maxIndex = i;
+				max = dist[i];
+			}
+		}
+		return max > 0 ? maxIndex : Double.NaN;
+	}
+
+	/**
+	 * Trains the original classifier and compiles it again.
+	 */
+	@Override
+	public void buildClassifier(Instances data) throws Exception {
+		original.buildClassifier(data);
+		build();
+	}
+
+	@Override
+	public Capabilities getCapabilities() {
+		return original.getCapabilities();
+	}
+
+	/**
+	 * Checks that the compiled classifier produces exactly the same
+	 * probabilities as the original, on an instance for every leaf and on
+	 * random instances made up of values around the split points.
+	 *
+	 * @param randomInstances Number of random instances to compare
+	 * @return Number of instances compared
+	 * @throws MauiServerException on the first difference
+	 */
+	public int verify(int randomInstances) {
+		List<double[]> instances = new ArrayList<double[]>();
+		double[] lower = new double[header.numAttributes()];
+		double[] upper = new double[header.numAttributes()];
+		for (int root: roots) {
+			Arrays.fill(lower, Double.NEGATIVE_INFINITY);
+			Arrays.fill(upper, Double.POSITIVE_INFINITY);
+			collectProbes(root, lower, upper, instances);
+		}
+		List<List<Double>> candidates = new ArrayList<List<Double>>();
+		for (int i = 0; i < header.numAttributes(); i++) {
+			candidates.add(new ArrayList<Double>(Arrays.asList(0.0, 1.0)));
+		}
+		for (int node = 0; node < attribute.length; node++) {
+			if (attribute[node] == -1) continue;
+			List<Double> values = candidates.get(attribute[node]);
+			values.add(splitPoint[node]);
+			values.add(splitPoint[node] + small / 2);
+			values.add(splitPoint[node] + 2 * small);
+			values.add(splitPoint[node] - 1);
+		}
+		Random random = new Random(42);
+		for (int n = 0; n < randomInstances; n++) {
+			double[] values = new double[header.numAttributes()];
+			for (int i = 0; i < values.length; i++) {
+				List<Double> c = candidates.get(i);
+				values[i] = c.get(random.nextInt(c.size()));
+			}
+			instances.add(values);
+		}
+		for (double[] values: instances) {
+			values[header.classIndex()] = Double.NaN;
+			Instance instance = createInstance(values);
+			double[] expected;
+			double[] actual;
+			try {
+				expected = original.distributionForInstance(instance);
+				actual = distributionForInstance(instance);
+			} catch (Exception ex) {
+				throw new MauiServerException("Error running classifier: " + ex.getMessage(), ex);
+			}
+			if (!Arrays.equals(expected, actual)) {
+				throw new MauiServerException("Compiled classifier differs from original: " +
+						Arrays.toString(actual) + " instead of " + Arrays.toString(expected) +
+						" for " + Arrays.toString(values));
+			}
+		}
+		return instances.size();
+	}
+
+	private void collectProbes(int node, double[] lower, double[] upper, List<double[]> result) {
+		int a = attribute[node];
+		if (a == -1) {
+			double[] values = new double[lower.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = probeValue(lower[i], upper[i]);
+			}
+			result.add(values);
+			return;
+		}
+		double oldUpper = upper[a];
+		upper[a] = Math.min(oldUpper, splitPoint[node]);
+		collectProbes(left[node], lower, upper, result);
+		upper[a] = oldUpper;
+		double oldLower = lower[a];
+		lower[a] = Math.max(oldLower, splitPoint[node]);
+		collectProbes(right[node], lower, upper, result);
+		lower[a] = oldLower;
+	}
+
+	public Classifier getOriginal() {
+		return original;
+	}
+
+	public int getTreeCount() {
+		return roots.length;
+	}
+
+	public int getNodeCount() {
+		return attribute.length;
+	}
+
+	public int getLeafCount() {
+		return leafCount;
+	}
+
+	public ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("trees", getTreeCount());
+		result.put("nodes", getNodeCount());
+		result.put("leaves", getLeafCount());
+		return result;
+	}
+
+	private static Object getField(Object object, String name) {
+		for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+			Field field;
+			try {
+				field = c.getDeclaredField(name);
+			} catch (NoSuchFieldException ex) {
+				continue;
+			}
+			try {
+				field.setAccessible(true);
+				return field.get(object);
+			} catch (ReflectiveOperationException | RuntimeException ex) {
+				throw new MauiServerException("Cannot read field " + name + " of " + c.getName() + ": " + ex.getMessage(), ex);
+			}
+		}
+		throw new MauiServerException("Unsupported classifier: " + object.getClass().getName() + " has no field " + name);
+	}
+
+	/**
+	 * Flattens J48's tree of ClassifierTree objects into arrays, in depth-first order.
+	 */
+	private static class Builder {
+		final List<Integer> roots = new ArrayList<Integer>();
+		int[] attribute = new int[64];
+		double[] splitPoint = new double[64];
+		int[] left = new int[64];
+		int[] right = new int[64];
+		int size = 0;
+		int leafCount = 0;
+
+		int addTree(Object tree, Instances header) {
+			int node = allocate();
+			boolean isLeaf = (Boolean) getField(tree, "m_isLeaf") || (Boolean) getField(tree, "m_isEmpty");
+			if (isLeaf) {
+				attribute[node] = -1;
+				leafCount++;
+				return node;
+			}
+			Object split = getField(tree, "m_localModel");
+			if (!classC45Split.equals(split.getClass().getName())) {
+				throw new MauiServerException("Unsupported split: " + split.getClass().getName());
+			}
+			int a = (Integer) getField(split, "m_attIndex");
+			Object[] sons = (Object[]) getField(tree, "m_sons");
+			if (!header.attribute(a).isNumeric() || sons.length != 2) {
+				throw new MauiServerException("Unsupported split: only binary splits on numeric attributes are supported");
+			}
+			attribute[node] = a;
+			splitPoint[node] = (Double) getField(split, "m_splitPoint");
+			int l = addTree(sons[0], header);
+			left[node] = l;
+			int r = addTree(sons[1], header);
+			right[node] = r;
+			return node;
+		}
+
+		private int allocate() {
+			if (size == attribute.length) {
+				int capacity = size * 2;
+				attribute = Arrays.copyOf(attribute, capacity);
+				splitPoint = Arrays.copyOf(splitPoint, capacity);
+				left = Arrays.copyOf(left, capacity);
+				right = Arrays.copyOf(right, capacity);
+			}
+			return size++;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Limits the number of suggest requests a tagger processes at the same
+ * time, adapting the limit to the observed latency, after the gradient
+ * algorithm of Netflix' concurrency-limits library. Requests over the
+ * limit are rejected rather than queued.
+ * <p>
+ * Latencies are averaged over windows of 10 requests and compared to a
+ * long-term average. While latency stays close to the long-term average,
+ * the limit grows by a fifth of its square root per window, but only if
+ * the requests actually used at least half of it. As latency rises above
+ * the long-term average, which means requests are queueing for CPU or
+ * Maui instances, the limit shrinks, by up to about a tenth per window.
+ * Requests abandoned because of their deadline shrink the limit by 10%
+ * each.
+ */
+public class ConcurrencyLimiter {
+	private final static int windowSize = 10;
+	private final static double longWindowAlpha = 2.0 / (60 + 1);
+	private final static double tolerance = 1.5;
+	private final static double smoothing = 0.2;
+	private final static double dropBackoff = 0.9;
+	private final static int minLimit = 1;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong acceptedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private volatile int maxLimit;
+	private volatile int limit;
+	// Guarded by this
+	private double estimatedLimit;
+	private double longRttNanos = 0;
+	private double shortRttNanos = 0;
+	private long windowSumNanos = 0;
+	private int windowCount = 0;
+	private int windowMaxInFlight = 0;
+
+	/**
+	 * @param initialLimit The limit before any latencies have been observed
+	 * @param maxLimit The limit never grows beyond this
+	 */
+	public ConcurrencyLimiter(int initialLimit, int maxLimit) {
+		this.maxLimit = Math.max(minLimit, maxLimit);
+		this.estimatedLimit = Math.max(minLimit, Math.min(initialLimit, this.maxLimit));
+		this.limit = (int) estimatedLimit;
+	}
+
+	public synchronized void setMaxLimit(int maxLimit) {
+		this.maxLimit = Math.max(minLimit, maxLimit);
+		if (estimatedLimit > this.maxLimit) {
+			estimatedLimit = this.maxLimit;
+			limit = this.maxLimit;
+		}
+	}
+
+	/**
+	 * @return A permit that must be released when the request is done, or <code>null</code> if the request is over the limit
+	 */
+	public Permit tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= limit) {
+				rejectedCount.incrementAndGet();
+				return null;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				acceptedCount.incrementAndGet();
+				return new Permit(current + 1);
+			}
+		}
+	}
+
+	synchronized void onSample(long rttNanos, int inFlightAtStart) {
+		windowSumNanos += rttNanos;
+		windowCount++;
+		windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtStart);
+		if (windowCount < windowSize) return;
+		shortRttNanos = (double) windowSumNanos / windowCount;
+		int maxInFlight = windowMaxInFlight;
+		windowSumNanos = 0;
+		windowCount = 0;
+		windowMaxInFlight = 0;
+		if (longRttNanos == 0) {
+			longRttNanos = shortRttNanos;
+		} else {
+			longRttNanos += (shortRttNanos - longRttNanos) * longWindowAlpha;
+		}
+		// Let the long-term average recover quickly after a period of overload
+		if (longRttNanos / shortRttNanos > 2) {
+			longRttNanos *= 0.95;
+		}
+		// Don't grow the limit if requests aren't using it
+		if (maxInFlight < estimatedLimit / 2) return;
+		double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+		double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+		setEstimatedLimit(estimatedLimit * (1 - smoothing) + newLimit * smoothing);
+	}
+
+	private synchronized void onDropped() {
+		droppedCount.incrementAndGet();
+		setEstimatedLimit(estimatedLimit * dropBackoff);
+	}
+
+	private void setEstimatedLimit(double value) {
+		estimatedLimit = Math.max(minLimit, Math.min(maxLimit, value));
+		limit = (int) estimatedLimit;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public synchronized ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("limit", limit);
+		result.put("max_limit", maxLimit);
+		result.put("in_flight", inFlight.get());
+		result.put("accepted", acceptedCount.get());
+		result.put("rejected", rejectedCount.get());
+		result.put("dropped", droppedCount.get());
+		result.put("short_rtt_millis", shortRttNanos / 1e6);
+		result.put("long_rtt_millis", longRttNanos / 1e6);
+		return result;
+	}
+
+	/**
+	 * Admission of one request.
+	 */
+	public class Permit {
+		private final long startNanos = System.nanoTime();
+		private final int inFlightAtStart;
+		private boolean released = false;
+
+		private Permit(int inFlightAtStart) {
+			this.inFlightAtStart = inFlightAtStart;
+		}
+
+		/**
+		 * Releases the permit after the request completed, and records its latency.
+		 */
+		public void release() {
+			if (!releaseOnce()) return;
+			onSample(System.nanoTime() - startNanos, inFlightAtStart);
+		}
+
+		/**
+		 * Releases the permit after the request was abandoned because of its deadline.
+		 */
+		public void releaseDropped() {
+			if (!releaseOnce()) return;
+			onDropped();
+		}
+
+		/**
+		 * Releases the permit after the request failed for reasons that say nothing about load.
+		 */
+		public void releaseIgnored() {
+			releaseOnce();
+		}
+
+		private boolean releaseOnce() {
+			if (released) return false;
+			released = true;
+			inFlight.decrementAndGet();
+			return true;
+		}
+	}
+}
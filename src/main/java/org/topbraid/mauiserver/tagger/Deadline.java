@@ -0,0 +1,144 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.topbraid.mauiserver.MauiServerException;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The time by which the work for a request must be done, and a flag
+ * for abandoning the work earlier, for example because the client has
+ * gone away. Work is abandoned cooperatively. Maui cannot be stopped
+ * in the middle of a document, so the deadline is checked before each
+ * document or section is handed to Maui and while waiting for a Maui
+ * instance or for the result of another thread.
+ */
+public class Deadline {
+
+	/**
+	 * How often {@link #await(Future)} checks whether the work has been cancelled
+	 */
+	private final static long cancellationCheckNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final long deadlineNanos;
+	private final boolean limited;
+	private volatile boolean cancelled = false;
+
+	private Deadline(long deadlineNanos, boolean limited) {
+		this.deadlineNanos = deadlineNanos;
+		this.limited = limited;
+	}
+
+	/**
+	 * A deadline that never expires, but can still be cancelled.
+	 */
+	public static Deadline none() {
+		return new Deadline(0, false);
+	}
+
+	public static Deadline afterMillis(long millis) {
+		return new Deadline(System.nanoTime() + millis * 1000000, true);
+	}
+
+	public boolean isLimited() {
+		return limited;
+	}
+
+	public boolean isExpired() {
+		return limited && System.nanoTime() - deadlineNanos >= 0;
+	}
+
+	/**
+	 * @return Time left until the deadline, 0 if it has passed, or {@link Long#MAX_VALUE} if there is none
+	 */
+	public long getRemainingNanos() {
+		if (!limited) return Long.MAX_VALUE;
+		return Math.max(0, deadlineNanos - System.nanoTime());
+	}
+
+	/**
+	 * Marks the work as no longer needed. Work in progress stops at the next check.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @throws RequestCancelledException if the work has been cancelled
+	 * @throws DeadlineExceededException if the deadline has passed
+	 */
+	public void check() {
+		if (cancelled) throw new RequestCancelledException();
+		if (isExpired()) throw new DeadlineExceededException();
+	}
+
+	/**
+	 * Waits for the result of work done on another thread, but not past the
+	 * deadline, and not after the work has been cancelled, even if there
+	 * is no time limit. If the waiting thread is interrupted, the deadline
+	 * is cancelled.
+	 */
+	public <T> T await(Future<T> future) {
+		try {
+			while (true) {
+				if (future.isDone()) return future.get();
+				check();
+				try {
+					return future.get(Math.min(getRemainingNanos(), cancellationCheckNanos), TimeUnit.NANOSECONDS);
+				} catch (TimeoutException ex) {
+					// Check again
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			cancel();
+			throw new RequestCancelledException();
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new MauiServerException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Counts requests whose work was abandoned.
+	 */
+	public static class Stats {
+		private final AtomicLong expiredCount = new AtomicLong();
+		private final AtomicLong cancelledCount = new AtomicLong();
+
+		public void recordExpired() {
+			expiredCount.incrementAndGet();
+		}
+
+		public void recordCancelled() {
+			cancelledCount.incrementAndGet();
+		}
+
+		public long getExpiredCount() {
+			return expiredCount.get();
+		}
+
+		public long getCancelledCount() {
+			return cancelledCount.get();
+		}
+
+		public ObjectNode toJSON() {
+			ObjectNode result = JsonNodeFactory.instance.objectNode();
+			result.put("expired", expiredCount.get());
+			result.put("cancelled", cancelledCount.get());
+			return result;
+		}
+	}
+}
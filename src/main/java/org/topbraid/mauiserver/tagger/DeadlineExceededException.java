@@ -0,0 +1,14 @@
+package org.topbraid.mauiserver.tagger;
+
+import org.topbraid.mauiserver.MauiServerException;
+
+/**
+ * Thrown when the work for a request is abandoned because its {@link Deadline} has passed.
+ */
+@SuppressWarnings("serial")
+public class DeadlineExceededException extends MauiServerException {
+
+	public DeadlineExceededException() {
+		super("Deadline exceeded before suggestions could be computed");
+	}
+}
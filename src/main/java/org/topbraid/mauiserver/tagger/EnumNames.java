@@ -0,0 +1,34 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.topbraid.mauiserver.MauiServerException;
+
+/**
+ * Converts between enum constants and the names under which they appear
+ * in configuration settings, request parameters and JSON output: the
+ * constant's name in lower case, such as <code>head_tail</code>.
+ */
+public class EnumNames {
+
+	public static String toString(Enum<?> value) {
+		return value.name().toLowerCase();
+	}
+
+	/**
+	 * @return The constant, or <code>null</code> if the name is <code>null</code>
+	 * @throws MauiServerException if there is no constant of that name
+	 */
+	public static <T extends Enum<T>> T fromString(Class<T> enumClass, String name) {
+		if (name == null) return null;
+		for (T value: enumClass.getEnumConstants()) {
+			if (toString(value).equals(name)) return value;
+		}
+		List<String> names = new ArrayList<String>();
+		for (T value: enumClass.getEnumConstants()) {
+			names.add(toString(value));
+		}
+		throw new MauiServerException("Unknown value '" + name + "', expected one of " + names);
+	}
+}
@@ -0,0 +1,175 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.main.MauiModelBuilder;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The Maui features a model is trained with, and the settings that
+ * limit the candidate phrases considered in each document. Fewer
+ * features make training and suggestion cheaper; fewer candidates
+ * make both cheaper still, at some cost in recall. Features are fixed
+ * when a model is trained, while candidate settings also apply when
+ * suggesting with an existing model.
+ * <p>
+ * There are three named profiles: {@link Name#FULL}, which uses all
+ * features and Maui's default candidate settings; {@link Name#BALANCED},
+ * which skips the thesaurus features and considers phrases of up to four
+ * words; and {@link Name#FAST}, which uses only the basic, keyphraseness
+ * and frequency features and considers phrases of up to three words.
+ */
+public class FeatureProfile {
+
+	public enum Name {
+		FULL, BALANCED, FAST;
+
+		public static Name fromString(String name) {
+			return EnumNames.fromString(Name.class, name);
+		}
+	}
+
+	public enum Feature {
+		BASIC, KEYPHRASENESS, FREQUENCY, POSITIONS, LENGTH, THESAURUS;
+
+		public static Feature fromString(String name) {
+			return EnumNames.fromString(Feature.class, name);
+		}
+	}
+
+	private final Name name;
+	private final boolean customized;
+	private final Set<Feature> features;
+	private final int minNumOccur;
+	private final int minPhraseLength;
+	private final int maxPhraseLength;
+
+	private FeatureProfile(Name name, boolean customized, Set<Feature> features,
+			int minNumOccur, int minPhraseLength, int maxPhraseLength) {
+		this.name = name;
+		this.customized = customized;
+		this.features = Collections.unmodifiableSet(features.isEmpty() ? EnumSet.noneOf(Feature.class) : EnumSet.copyOf(features));
+		this.minNumOccur = minNumOccur;
+		this.minPhraseLength = minPhraseLength;
+		this.maxPhraseLength = Math.max(minPhraseLength, maxPhraseLength);
+	}
+
+	public static FeatureProfile get(Name name) {
+		switch (name) {
+		case BALANCED:
+			return new FeatureProfile(name, false, EnumSet.complementOf(EnumSet.of(Feature.THESAURUS)), 2, 1, 4);
+		case FAST:
+			return new FeatureProfile(name, false, EnumSet.of(Feature.BASIC, Feature.KEYPHRASENESS, Feature.FREQUENCY), 2, 1, 3);
+		default:
+			return new FeatureProfile(Name.FULL, false, EnumSet.allOf(Feature.class), 2, 1, 5);
+		}
+	}
+
+	/**
+	 * Returns a profile based on this one, with some settings replaced.
+	 * A <code>null</code> argument keeps the setting of this profile.
+	 * A maximum phrase length below the minimum is raised to the minimum.
+	 */
+	public FeatureProfile override(Set<Feature> features, Integer minNumOccur, Integer minPhraseLength, Integer maxPhraseLength) {
+		if (features == null && minNumOccur == null && minPhraseLength == null && maxPhraseLength == null) {
+			return this;
+		}
+		return new FeatureProfile(name, true,
+				features == null ? this.features : features,
+				minNumOccur == null ? this.minNumOccur : minNumOccur,
+				minPhraseLength == null ? this.minPhraseLength : minPhraseLength,
+				maxPhraseLength == null ? this.maxPhraseLength : maxPhraseLength);
+	}
+
+	public Name getName() {
+		return name;
+	}
+
+	/**
+	 * Whether any setting differs from the named profile
+	 */
+	public boolean isCustomized() {
+		return customized;
+	}
+
+	public Set<Feature> getFeatures() {
+		return features;
+	}
+
+	public boolean hasFeature(Feature feature) {
+		return features.contains(feature);
+	}
+
+	/**
+	 * Minimum number of times a phrase must occur in a document to be a candidate
+	 */
+	public int getMinNumOccur() {
+		return minNumOccur;
+	}
+
+	public int getMinPhraseLength() {
+		return minPhraseLength;
+	}
+
+	public int getMaxPhraseLength() {
+		return maxPhraseLength;
+	}
+
+	/**
+	 * Sets up a model builder with the features and candidate settings of this profile.
+	 */
+	public void applyTo(MauiModelBuilder builder) {
+		builder.setBasicFeatures(hasFeature(Feature.BASIC));
+		builder.setKeyphrasenessFeature(hasFeature(Feature.KEYPHRASENESS));
+		builder.setFrequencyFeatures(hasFeature(Feature.FREQUENCY));
+		builder.setPositionsFeatures(hasFeature(Feature.POSITIONS));
+		builder.setLengthFeature(hasFeature(Feature.LENGTH));
+		builder.setThesaurusFeatures(hasFeature(Feature.THESAURUS));
+		builder.minNumOccur = minNumOccur;
+		builder.minPhraseLength = minPhraseLength;
+		builder.maxPhraseLength = maxPhraseLength;
+	}
+
+	/**
+	 * Sets the candidate settings of this profile on a trained model.
+	 * The model's features are left alone, as they must match its classifier.
+	 */
+	public void applyTo(MauiFilter model) {
+		model.setMinNumOccur(minNumOccur);
+		model.setMinPhraseLength(minPhraseLength);
+		model.setMaxPhraseLength(maxPhraseLength);
+	}
+
+	/**
+	 * Whether the two profiles select the same candidates from a document
+	 */
+	public boolean hasSameCandidateSettings(FeatureProfile other) {
+		return minNumOccur == other.minNumOccur
+				&& minPhraseLength == other.minPhraseLength
+				&& maxPhraseLength == other.maxPhraseLength;
+	}
+
+	public ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("profile", EnumNames.toString(name));
+		result.put("customized", customized);
+		ArrayNode array = result.putArray("features");
+		for (Feature feature: features) {
+			array.add(EnumNames.toString(feature));
+		}
+		result.put("min_num_occur", minNumOccur);
+		result.put("min_phrase_length", minPhraseLength);
+		result.put("max_phrase_length", maxPhraseLength);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return EnumNames.toString(name) + (customized ? " (customized)" : "");
+	}
+}
@@ -19,6 +19,10 @@ public class JobReport {
 	private static String fieldErrorMessage = "error_message";
 	private static String fieldPrecision = "precision";
 	private static String fieldRecall = "recall";
+	private static String fieldCandidate = "candidate";
+	private static String fieldCompiledClassifier = "compiled_classifier";
+	private static String fieldCompaction = "compaction";
+	private static String fieldFeatures = "features";
 
 	private final ObjectNode root;
 	private Date startTime = null;
@@ -105,6 +109,35 @@ public class JobReport {
 		root.put(fieldRecall, recall);
 	}
 	
+	/**
+	 * Records that the trained model was not activated, but held as a
+	 * candidate for shadow evaluation.
+	 */
+	public void logCandidate() {
+		root.put(fieldCandidate, true);
+	}
+	
+	/**
+	 * Records the outcome of compiling the trained model's classifier.
+	 */
+	public void logCompiledClassifier(ObjectNode outcome) {
+		root.set(fieldCompiledClassifier, outcome);
+	}
+	
+	/**
+	 * Records the outcome of compacting the trained model, including its size and load time.
+	 */
+	public void logCompaction(ObjectNode outcome) {
+		root.set(fieldCompaction, outcome);
+	}
+	
+	/**
+	 * Records the feature profile the model was trained with.
+	 */
+	public void logFeatureProfile(ObjectNode profile) {
+		root.set(fieldFeatures, profile);
+	}
+	
 	public ObjectNode toJSON() {
 		if (startTime != null) {
 			root.put(fieldStartTime, formatDate(startTime));
@@ -123,11 +156,12 @@ public class JobReport {
 		dateFormat.setTimeZone(TimeZone.getDefault());
 	}
 
-	private static String formatDate(Date date) {
+	// DateFormat is not thread-safe, and reports may be formatted concurrently
+	synchronized static String formatDate(Date date) {
 	    return dateFormat.format(date);
 	}
 
-	private static Date parseDate(String date) {
+	private synchronized static Date parseDate(String date) {
 		try {
 			return dateFormat.parse(date);
 		} catch (ParseException e) {
@@ -0,0 +1,48 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.topbraid.mauiserver.MauiServer;
+import org.topbraid.mauiserver.MauiServerException;
+
+import com.entopix.maui.stemmers.Stemmer;
+import com.entopix.maui.stopwords.Stopwords;
+
+/**
+ * Shared stemmer and stopwords instances, one per class, used by all
+ * taggers for vocabulary building, training and suggestions. Stemmers
+ * are wrapped in a {@link CachingStemmer}.
+ */
+public class LanguageProcessors {
+	private final static int stemCacheSize = MauiServer.getStemCacheSize();
+	private final static Map<String, CachingStemmer> stemmers = new ConcurrentHashMap<String, CachingStemmer>();
+	private final static Map<String, Stopwords> stopwords = new ConcurrentHashMap<String, Stopwords>();
+
+	/**
+	 * @param className Name of a {@link Stemmer} subclass
+	 */
+	public static CachingStemmer getStemmer(String className) throws MauiServerException {
+		return stemmers.computeIfAbsent(className,
+				name -> new CachingStemmer(instantiate(Stemmer.class, name), stemCacheSize));
+	}
+
+	/**
+	 * @param className Name of a {@link Stopwords} subclass
+	 */
+	public static Stopwords getStopwords(String className) throws MauiServerException {
+		return stopwords.computeIfAbsent(className, name -> instantiate(Stopwords.class, name));
+	}
+
+	private static <T> T instantiate(Class<T> superclass, String className) {
+		try {
+			Class<?> result = Class.forName(className);
+			if (!superclass.isAssignableFrom(result)) {
+				throw new MauiServerException("Class " + className + " does not implement/extend " + superclass.getCanonicalName());
+			}
+			return superclass.cast(result.getDeclaredConstructor().newInstance());
+		} catch (ReflectiveOperationException ex) {
+			throw new MauiServerException(ex);
+		}
+	}
+}
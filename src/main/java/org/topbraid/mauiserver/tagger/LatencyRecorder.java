@@ -0,0 +1,66 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Records the latencies of recent operations and reports their
+ * distribution. Keeps a fixed number of the most recent measurements.
+ */
+public class LatencyRecorder {
+	private final long[] nanos;
+	private long count = 0;
+
+	/**
+	 * @param capacity Number of most recent measurements to keep
+	 */
+	public LatencyRecorder(int capacity) {
+		this.nanos = new long[capacity];
+	}
+
+	public synchronized void record(long latencyNanos) {
+		nanos[(int) (count % nanos.length)] = latencyNanos;
+		count++;
+	}
+
+	/**
+	 * Total number of measurements recorded, including those no longer kept.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @param percentile Between 0 and 100
+	 * @return The latency in milliseconds at the given percentile of the kept measurements, or 0 if there are none
+	 */
+	public double getPercentileMillis(double percentile) {
+		return getPercentilesMillis(percentile)[0];
+	}
+
+	private synchronized double[] getPercentilesMillis(double... percentiles) {
+		int size = (int) Math.min(count, nanos.length);
+		double[] result = new double[percentiles.length];
+		if (size == 0) return result;
+		long[] sorted = Arrays.copyOf(nanos, size);
+		Arrays.sort(sorted);
+		for (int i = 0; i < percentiles.length; i++) {
+			int index = (int) Math.ceil(percentiles[i] / 100 * size) - 1;
+			result[i] = sorted[Math.max(0, Math.min(size - 1, index))] / 1e6;
+		}
+		return result;
+	}
+
+	public ObjectNode toJSON() {
+		double[] p = getPercentilesMillis(50, 90, 99, 100);
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("count", getCount());
+		result.put("p50_millis", p[0]);
+		result.put("p90_millis", p[1]);
+		result.put("p99_millis", p[2]);
+		result.put("max_millis", p[3]);
+		return result;
+	}
+}
@@ -0,0 +1,233 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.topbraid.mauiserver.MauiServerException;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.main.MauiWrapper;
+import com.entopix.maui.stemmers.Stemmer;
+import com.entopix.maui.vocab.Vocabulary;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import weka.core.SerializedObject;
+
+/**
+ * A pool of independent {@link MauiWrapper} instances for one Maui model,
+ * so that concurrent requests never share the state of a {@link MauiFilter}.
+ * Each wrapper has its own deep copy of the model. Wrappers are created
+ * on demand up to the pool size; when all are in use, callers wait until
+ * one is released.
+ */
+public class MauiWrapperPool {
+	private final static Logger log = LoggerFactory.getLogger(MauiWrapperPool.class);
+
+	/**
+	 * Random instances on which the compiled classifier is checked when a
+	 * model is loaded; fewer than after training, to keep loading fast
+	 */
+	private final static int verificationInstances = 1000;
+
+	private final Vocabulary vocabulary;
+	private final Stemmer stemmer;
+	private final int size;
+	private final BlockingQueue<MauiWrapper> idle = new LinkedBlockingQueue<MauiWrapper>();
+	private final AtomicInteger created = new AtomicInteger();
+	private final AtomicInteger inUse = new AtomicInteger();
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong waitCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final SerializedObject prototype;
+	private final CompiledClassifier compiled;
+	private MauiFilter original;
+
+	/**
+	 * @param vocabulary The vocabulary shared by all wrappers
+	 * @param model The model; the pool takes ownership of it
+	 * @param size Maximum number of wrappers, at least 1
+	 */
+	public MauiWrapperPool(Vocabulary vocabulary, MauiFilter model, int size) {
+		this(vocabulary, null, model, size, false);
+	}
+
+	/**
+	 * @param vocabulary The vocabulary shared by all wrappers
+	 * @param stemmer A thread-safe stemmer shared by all wrappers, such as a {@link CachingStemmer},
+	 *        or <code>null</code> to keep each copy's own stemmer
+	 * @param model The model, with its original classifier; the pool takes ownership of it
+	 * @param size Maximum number of wrappers, at least 1
+	 * @param compileClassifier Whether to use a {@link CompiledClassifier} in the wrappers;
+	 *        if the model's classifier can't be compiled, the original is used
+	 */
+	public MauiWrapperPool(Vocabulary vocabulary, Stemmer stemmer, MauiFilter model, int size, boolean compileClassifier) {
+		this.vocabulary = vocabulary;
+		this.stemmer = stemmer;
+		this.size = Math.max(1, size);
+		this.original = model;
+		this.compiled = compileClassifier ? compile(model) : null;
+		if (this.size > 1) {
+			// Take the copy now, before the model is in use by any request,
+			// and without the vocabulary, which is shared rather than copied
+			try {
+				model.setVocabulary(null);
+				prototype = new SerializedObject(model);
+			} catch (Exception ex) {
+				throw new MauiServerException("Error copying Maui model: " + ex.getMessage(), ex);
+			}
+		} else {
+			prototype = null;
+		}
+	}
+
+	/**
+	 * Compiles the model's classifier once; the wrappers share the
+	 * compiled trees. The model keeps its original classifier until its
+	 * wrapper is created, so that copies are made of the original. The
+	 * compiled classifier is only used if it gives the same results as the
+	 * original on an instance for every leaf and on a sample of random
+	 * instances, as the compilation depends on Weka's internals.
+	 */
+	private static CompiledClassifier compile(MauiFilter model) {
+		long start = System.currentTimeMillis();
+		try {
+			CompiledClassifier result = CompiledClassifier.compile(model);
+			int verified = result.verify(verificationInstances);
+			log.info("Compiled classifier: " + result.getTreeCount() + " trees, " + result.getNodeCount() +
+					" nodes, verified on " + verified + " instances in " + (System.currentTimeMillis() - start) + "ms");
+			return result;
+		} catch (MauiServerException ex) {
+			log.warn("Could not compile classifier, using original: " + ex.getMessage());
+			return null;
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Number of copies of the model held by the pool: one per wrapper
+	 * created so far, the serialized copy that further wrappers are made
+	 * from, and the original model until a wrapper has taken it.
+	 */
+	public synchronized int getModelCopies() {
+		return created.get() + (prototype == null ? 0 : 1) + (original == null ? 0 : 1);
+	}
+
+	/**
+	 * Creates all wrappers up front, so that the first requests
+	 * don't have to wait for model copies to be made.
+	 */
+	public void prestart() {
+		MauiWrapper wrapper;
+		while ((wrapper = createIfBelowSize()) != null) {
+			idle.add(wrapper);
+		}
+	}
+
+	/**
+	 * Returns a wrapper for exclusive use by the caller, waiting if
+	 * necessary. It must be returned with {@link #release(MauiWrapper)}.
+	 */
+	public MauiWrapper borrow() throws InterruptedException {
+		return borrow(Deadline.none());
+	}
+
+	/**
+	 * Returns a wrapper for exclusive use by the caller, waiting if
+	 * necessary, but not past the deadline. It must be returned with
+	 * {@link #release(MauiWrapper)}.
+	 *
+	 * @throws DeadlineExceededException if the deadline passes first, or has already passed
+	 * @throws RequestCancelledException if the deadline was cancelled before waiting
+	 */
+	public MauiWrapper borrow(Deadline deadline) throws InterruptedException {
+		deadline.check();
+		MauiWrapper result = idle.poll();
+		if (result == null) {
+			result = createIfBelowSize();
+		}
+		if (result == null) {
+			long start = System.nanoTime();
+			result = deadline.isLimited()
+					? idle.poll(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS)
+					: idle.take();
+			long waited = System.nanoTime() - start;
+			waitCount.incrementAndGet();
+			totalWaitNanos.addAndGet(waited);
+			maxWaitNanos.accumulateAndGet(waited, Math::max);
+			if (result == null) {
+				throw new DeadlineExceededException();
+			}
+		}
+		borrowCount.incrementAndGet();
+		inUse.incrementAndGet();
+		return result;
+	}
+
+	public void release(MauiWrapper wrapper) {
+		inUse.decrementAndGet();
+		idle.add(wrapper);
+	}
+
+	private MauiWrapper createIfBelowSize() {
+		while (true) {
+			int count = created.get();
+			if (count >= size) return null;
+			if (created.compareAndSet(count, count + 1)) break;
+		}
+		try {
+			return createWrapper();
+		} catch (RuntimeException ex) {
+			created.decrementAndGet();
+			throw ex;
+		}
+	}
+
+	private MauiWrapper createWrapper() {
+		MauiFilter model;
+		synchronized (this) {
+			model = original;
+			original = null;
+		}
+		if (model == null) {
+			model = (MauiFilter) prototype.getObject();
+			if (model == null) {
+				throw new MauiServerException("Error copying Maui model");
+			}
+		}
+		log.debug("Creating Maui wrapper " + created.get() + "/" + size);
+		model.setVocabulary(vocabulary);
+		if (stemmer != null) {
+			model.setStemmer(stemmer);
+		}
+		if (compiled != null) {
+			CompiledClassifier.install(model, compiled);
+		}
+		return new MauiWrapper(vocabulary, model);
+	}
+
+	public ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		long borrows = borrowCount.get();
+		result.put("size", size);
+		result.put("created", created.get());
+		result.put("model_copies", getModelCopies());
+		result.put("in_use", inUse.get());
+		result.put("idle", idle.size());
+		result.put("borrows", borrows);
+		result.put("waits", waitCount.get());
+		result.put("avg_wait_millis", borrows == 0 ? 0 : totalWaitNanos.get() / borrows / 1e6);
+		result.put("max_wait_millis", maxWaitNanos.get() / 1e6);
+		result.put("compiled_classifier", compiled != null);
+		return result;
+	}
+}
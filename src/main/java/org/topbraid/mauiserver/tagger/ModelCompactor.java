@@ -0,0 +1,222 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.topbraid.mauiserver.MauiServerException;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.entopix.maui.main.MauiWrapper;
+import com.entopix.maui.util.Topic;
+import com.entopix.maui.vocab.Vocabulary;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Shrinks a freshly trained Maui model before it is persisted, so that it
+ * takes less space on disk and in memory and loads faster:
+ * <ul>
+ * <li>The vocabulary is removed. The tagger keeps its vocabulary separately
+ *     and attaches it whenever the model is put into use.</li>
+ * <li>State that {@link MauiFilter} only needs while training, such as the
+ *     candidate phrases of the training documents, is cleared.</li>
+ * <li>The string keys of the model's phrase tables are shared between the
+ *     tables, so each distinct phrase is stored only once.</li>
+ * </ul>
+ * The original and the compacted model are each written out and read back,
+ * to measure their size and load time. Both copies are run on sample
+ * documents; if their suggestions differ, the original model is used.
+ */
+public class ModelCompactor {
+	private final static Logger log = LoggerFactory.getLogger(ModelCompactor.class);
+
+	/**
+	 * Fields of {@link MauiFilter} that hold per-document state of the
+	 * last batch, which are emptied rather than removed.
+	 */
+	private final static String[] trainingStateFields = {"allCandidates"};
+
+	private final Vocabulary vocabulary;
+	private final List<String> sampleTexts;
+	private final int maxTopics;
+
+	/**
+	 * @param vocabulary The vocabulary the model is used with
+	 * @param sampleTexts Documents on which the results of the original and compacted model are compared
+	 */
+	public ModelCompactor(Vocabulary vocabulary, List<String> sampleTexts, int maxTopics) {
+		this.vocabulary = vocabulary;
+		this.sampleTexts = sampleTexts;
+		this.maxTopics = maxTopics;
+	}
+
+	/**
+	 * Compacts the model, and records the outcome in the report object.
+	 *
+	 * @return The compacted model, or the original if compaction failed
+	 */
+	public MauiFilter compact(MauiFilter model, ObjectNode report) {
+		File before = null;
+		File after = null;
+		try {
+			before = write(model);
+			report.put("original_bytes", before.length());
+			long start = System.nanoTime();
+			MauiFilter copy = read(before);
+			report.put("original_load_millis", (System.nanoTime() - start) / 1000000);
+			List<String> expected = extract(copy);
+			copy = null;
+
+			ArrayNode removed = report.putArray("removed");
+			model.setVocabulary(null);
+			removed.add("vocabulary");
+			for (String name: trainingStateFields) {
+				if (clearField(model, name)) {
+					removed.add(name);
+				}
+			}
+			report.put("shared_strings", shareStrings(model));
+
+			after = write(model);
+			report.put("compacted_bytes", after.length());
+			start = System.nanoTime();
+			copy = read(after);
+			report.put("compacted_load_millis", (System.nanoTime() - start) / 1000000);
+			List<String> actual = extract(copy);
+			report.put("verified_documents", sampleTexts.size());
+			if (!expected.equals(actual)) {
+				throw new MauiServerException("Compacted model gives different results");
+			}
+			report.put("compacted", true);
+			log.info("Compacted model from " + before.length() + " to " + after.length() + " bytes");
+			return model;
+		} catch (Exception ex) {
+			log.warn("Could not compact model, using original: " + ex.getMessage());
+			report.put("compacted", false);
+			report.put("error_message", ex.getMessage());
+			if (before == null) {
+				// Failed before the model was touched
+				return model;
+			}
+			try {
+				return read(before);
+			} catch (IOException | ClassNotFoundException ex2) {
+				throw new MauiServerException("Error restoring original model: " + ex2.getMessage(), ex2);
+			}
+		} finally {
+			if (before != null) before.delete();
+			if (after != null) after.delete();
+		}
+	}
+
+	private List<String> extract(MauiFilter model) {
+		model.setVocabulary(vocabulary);
+		MauiWrapper wrapper = new MauiWrapper(vocabulary, model);
+		List<String> result = new ArrayList<String>();
+		for (String text: sampleTexts) {
+			try {
+				for (Topic topic: wrapper.extractTopicsFromText(text, maxTopics)) {
+					result.add(topic.getId() + " " + topic.getProbability());
+				}
+			} catch (Exception ex) {
+				result.add("error: " + ex.getMessage());
+			}
+			result.add("");
+		}
+		return result;
+	}
+
+	/**
+	 * Empties a map or collection field of the model, if it exists.
+	 */
+	private static boolean clearField(MauiFilter model, String name) {
+		try {
+			Field field = MauiFilter.class.getDeclaredField(name);
+			field.setAccessible(true);
+			Object value = field.get(model);
+			if (value instanceof Map) {
+				((Map<?, ?>) value).clear();
+				return true;
+			}
+			if (value instanceof Collection) {
+				((Collection<?>) value).clear();
+				return true;
+			}
+			return false;
+		} catch (NoSuchFieldException ex) {
+			return false;
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			log.warn("Cannot clear field " + name + " of Maui model: " + ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Rebuilds the model's string-keyed hash maps so that equal keys in
+	 * different maps are the same string instance.
+	 *
+	 * @return Number of keys that now share a string with another map
+	 */
+	private static int shareStrings(MauiFilter model) {
+		Map<String, String> canonical = new HashMap<String, String>();
+		int shared = 0;
+		for (Field field: MauiFilter.class.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers())) continue;
+			try {
+				field.setAccessible(true);
+				Object value = field.get(model);
+				if (value == null || value.getClass() != HashMap.class) continue;
+				Map<?, ?> map = (Map<?, ?>) value;
+				if (map.isEmpty() || !(map.keySet().iterator().next() instanceof String)) continue;
+				HashMap<Object, Object> rebuilt = new HashMap<Object, Object>(map.size() * 4 / 3 + 1);
+				for (Map.Entry<?, ?> entry: map.entrySet()) {
+					Object key = entry.getKey();
+					if (key instanceof String) {
+						String existing = canonical.putIfAbsent((String) key, (String) key);
+						if (existing != null) {
+							key = existing;
+							shared++;
+						}
+					}
+					rebuilt.put(key, entry.getValue());
+				}
+				field.set(model, rebuilt);
+			} catch (ReflectiveOperationException | RuntimeException ex) {
+				log.warn("Cannot compact field " + field.getName() + " of Maui model: " + ex.getMessage());
+			}
+		}
+		return shared;
+	}
+
+	private static File write(MauiFilter model) throws IOException {
+		File file = File.createTempFile("maui-model-", ".tmp");
+		try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeObject(model);
+		} catch (IOException ex) {
+			file.delete();
+			throw ex;
+		}
+		return file;
+	}
+
+	private static MauiFilter read(File file) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			return (MauiFilter) in.readObject();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.SKOS;
+
+import com.entopix.maui.stemmers.Stemmer;
+import com.entopix.maui.stopwords.Stopwords;
+import com.entopix.maui.util.Topic;
+
+/**
+ * A fast alternative to Maui's extraction that only looks for exact
+ * occurrences of concept labels in the text. All preferred, alternative
+ * and hidden labels of the SKOS vocabulary are normalized the same way
+ * as the text (lower-cased, stopwords removed, stemmed) and stored in a
+ * trie of words, so a text can be matched in a single pass. Needs no
+ * trained model. A concept's probability is its number of occurrences
+ * relative to the most frequent concept in the text.
+ */
+public class PhraseDictionary {
+	private final static Pattern word = Pattern.compile("[\\p{L}\\p{N}]+");
+	// Rough sizes on a 64-bit JVM with compressed references
+	private final static int objectBytes = 16;
+	private final static int mapEntryBytes = 48;
+	private final static int stringBytes = 40;
+
+	private final Node root = new Node();
+	private final Map<String, String> titles = new HashMap<String, String>();
+	private int labelCount = 0;
+	private long estimatedBytes = 0;
+
+	/**
+	 * @param vocabulary A SKOS vocabulary
+	 * @param lang Only labels in this language or without language are used
+	 */
+	public PhraseDictionary(Model vocabulary, String lang, Stemmer stemmer, Stopwords stopwords) {
+		addLabels(vocabulary, SKOS.prefLabel, lang, stemmer, stopwords, true);
+		addLabels(vocabulary, SKOS.altLabel, lang, stemmer, stopwords, false);
+		addLabels(vocabulary, SKOS.hiddenLabel, lang, stemmer, stopwords, false);
+	}
+
+	private void addLabels(Model vocabulary, Property property, String lang,
+			Stemmer stemmer, Stopwords stopwords, boolean isTitle) {
+		StmtIterator it = vocabulary.listStatements(null, property, (RDFNode) null);
+		try {
+			while (it.hasNext()) {
+				Statement s = it.next();
+				if (!s.getObject().isLiteral() || !s.getSubject().isURIResource()) continue;
+				Literal label = s.getLiteral();
+				if (!isInLanguage(label, lang)) continue;
+				String conceptId = s.getSubject().getURI();
+				if (isTitle && !titles.containsKey(conceptId)) {
+					titles.put(conceptId, label.getLexicalForm());
+					estimatedBytes += mapEntryBytes + sizeOf(conceptId) + sizeOf(label.getLexicalForm());
+				}
+				List<String> words = normalize(label.getLexicalForm(), stemmer, stopwords);
+				if (words.isEmpty()) continue;
+				Node node = root;
+				for (String w: words) {
+					if (node.children == null || !node.children.containsKey(w)) {
+						estimatedBytes += objectBytes + mapEntryBytes + sizeOf(w);
+					}
+					node = node.getOrCreateChild(w);
+				}
+				if (node.addConcept(conceptId)) {
+					labelCount++;
+					estimatedBytes += 2 * objectBytes;
+				}
+			}
+		} finally {
+			it.close();
+		}
+	}
+
+	private static boolean isInLanguage(Literal label, String lang) {
+		String labelLang = label.getLanguage();
+		if (labelLang == null || "".equals(labelLang) || lang == null) return true;
+		return labelLang.equalsIgnoreCase(lang) || labelLang.toLowerCase().startsWith(lang.toLowerCase() + "-");
+	}
+
+	/**
+	 * Number of distinct concept/label combinations in the dictionary.
+	 */
+	public int getLabelCount() {
+		return labelCount;
+	}
+
+	/**
+	 * Rough estimate of the memory taken up by the trie and the concept titles
+	 */
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	private static long sizeOf(String s) {
+		return stringBytes + s.length();
+	}
+
+	/**
+	 * Finds the concepts whose labels occur in the text. At each position,
+	 * the longest matching label wins, and matches don't overlap.
+	 *
+	 * @return Topics ordered by descending number of occurrences, then by first occurrence
+	 */
+	public List<Topic> match(String text, Stemmer stemmer, Stopwords stopwords, int maxTopics) {
+		List<String> words = normalize(text, stemmer, stopwords);
+		Map<String, int[]> counts = new LinkedHashMap<String, int[]>();
+		int i = 0;
+		while (i < words.size()) {
+			Node node = root;
+			Node longest = null;
+			int longestEnd = i;
+			for (int j = i; j < words.size(); j++) {
+				node = node.children == null ? null : node.children.get(words.get(j));
+				if (node == null) break;
+				if (node.concepts != null) {
+					longest = node;
+					longestEnd = j + 1;
+				}
+			}
+			if (longest == null) {
+				i++;
+				continue;
+			}
+			for (String conceptId: longest.concepts) {
+				int[] count = counts.get(conceptId);
+				if (count == null) {
+					counts.put(conceptId, new int[]{1});
+				} else {
+					count[0]++;
+				}
+			}
+			i = longestEnd;
+		}
+		if (counts.isEmpty()) return Collections.emptyList();
+		List<Map.Entry<String, int[]>> ranked = new ArrayList<Map.Entry<String, int[]>>(counts.entrySet());
+		// Stable sort, so ties stay in order of first occurrence
+		Collections.sort(ranked, (a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]));
+		double max = ranked.get(0).getValue()[0];
+		List<Topic> result = new ArrayList<Topic>(Math.min(maxTopics, ranked.size()));
+		for (Map.Entry<String, int[]> entry: ranked) {
+			if (result.size() >= maxTopics) break;
+			String title = titles.get(entry.getKey());
+			result.add(new Topic(title == null ? entry.getKey() : title, entry.getKey(), entry.getValue()[0] / max));
+		}
+		return result;
+	}
+
+	private static List<String> normalize(String text, Stemmer stemmer, Stopwords stopwords) {
+		List<String> result = new ArrayList<String>();
+		Matcher m = word.matcher(text);
+		while (m.find()) {
+			String w = m.group().toLowerCase();
+			if (stopwords.isStopword(w)) continue;
+			result.add(stemmer.stem(w));
+		}
+		return result;
+	}
+
+	private static class Node {
+		// Both null until needed, as most nodes have no children or no concepts
+		Map<String, Node> children = null;
+		List<String> concepts = null;
+
+		boolean addConcept(String conceptId) {
+			if (concepts == null) {
+				concepts = new ArrayList<String>(1);
+			}
+			if (concepts.contains(conceptId)) return false;
+			concepts.add(conceptId);
+			return true;
+		}
+
+		Node getOrCreateChild(String word) {
+			if (children == null) {
+				children = new HashMap<String, Node>(4);
+			}
+			Node child = children.get(word);
+			if (child == null) {
+				child = new Node();
+				children.put(word, child);
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.topbraid.mauiserver.MauiServer;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Singleton cache of recommendation results, shared by all taggers
+ * within a global memory budget. Least recently used entries are
+ * evicted first. Entries are keyed by a hash of the text and by the
+ * tagger's generation, which changes whenever the tagger's model,
+ * vocabulary or configuration changes, so stale results are never returned.
+ */
+public class RecommendationCache {
+
+	private static RecommendationCache singleton = new RecommendationCache(MauiServer.getSuggestCacheBytes());
+
+	public static RecommendationCache get() {
+		return singleton;
+	}
+
+	// Rough per-entry overhead of key, map entry and result lists, in bytes
+	private final static int entryOverhead = 200;
+
+	private final long maxBytes;
+	private long usedBytes = 0;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+	public RecommendationCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	public synchronized RecommendationResult get(Key key, Stats stats) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			stats.misses.incrementAndGet();
+			return null;
+		}
+		stats.hits.incrementAndGet();
+		return entry.result;
+	}
+
+	public synchronized void put(Key key, RecommendationResult result, Stats stats) {
+		long size = entryOverhead + result.estimateSize();
+		if (size > maxBytes) return;
+		Entry old = entries.put(key, new Entry(result, size, stats));
+		if (old != null) {
+			remove(old);
+		}
+		usedBytes += size;
+		stats.entries.incrementAndGet();
+		stats.bytes.addAndGet(size);
+		Iterator<Entry> it = entries.values().iterator();
+		while (usedBytes > maxBytes && it.hasNext()) {
+			Entry eldest = it.next();
+			it.remove();
+			remove(eldest);
+			eldest.stats.evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Drops all entries of a tagger, to free up the memory as soon as
+	 * they have become stale.
+	 */
+	public synchronized void invalidate(String taggerId) {
+		Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, Entry> entry = it.next();
+			if (entry.getKey().taggerId.equals(taggerId)) {
+				it.remove();
+				remove(entry.getValue());
+			}
+		}
+	}
+
+	private void remove(Entry entry) {
+		usedBytes -= entry.size;
+		entry.stats.entries.decrementAndGet();
+		entry.stats.bytes.addAndGet(-entry.size);
+	}
+
+	public synchronized ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("max_bytes", maxBytes);
+		result.put("used_bytes", usedBytes);
+		result.put("entries", entries.size());
+		return result;
+	}
+
+	public static Key createKey(String taggerId, long generation, String text) {
+		return createKey(taggerId, generation, null, text);
+	}
+
+	/**
+	 * @param variant Distinguishes results for the same text that were computed in different ways; may be <code>null</code>
+	 */
+	public static Key createKey(String taggerId, long generation, String variant, String text) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return new Key(taggerId, generation, variant, digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException("Can't happen", ex);
+		}
+	}
+
+	public static class Key {
+		private final String taggerId;
+		private final long generation;
+		private final String variant;
+		private final byte[] textHash;
+		private final int hashCode;
+
+		private Key(String taggerId, long generation, String variant, byte[] textHash) {
+			this.taggerId = taggerId;
+			this.generation = generation;
+			this.variant = variant;
+			this.textHash = textHash;
+			this.hashCode = 31 * (31 * (31 * taggerId.hashCode() + Long.hashCode(generation)) + Objects.hashCode(variant)) + Arrays.hashCode(textHash);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) return false;
+			Key key = (Key) other;
+			return generation == key.generation && taggerId.equals(key.taggerId)
+					&& Objects.equals(variant, key.variant) && Arrays.equals(textHash, key.textHash);
+		}
+	}
+
+	/**
+	 * Cache statistics for a single tagger.
+	 */
+	public static class Stats {
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+		private final AtomicLong evictions = new AtomicLong();
+		private final AtomicLong entries = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+
+		public ObjectNode toJSON() {
+			ObjectNode result = JsonNodeFactory.instance.objectNode();
+			result.put("hits", hits.get());
+			result.put("misses", misses.get());
+			result.put("evictions", evictions.get());
+			result.put("entries", entries.get());
+			result.put("bytes", bytes.get());
+			return result;
+		}
+	}
+
+	private static class Entry {
+		final RecommendationResult result;
+		final long size;
+		final Stats stats;
+
+		Entry(RecommendationResult result, long size, Stats stats) {
+			this.result = result;
+			this.size = size;
+			this.stats = stats;
+		}
+	}
+}
@@ -11,6 +11,9 @@ public class RecommendationResult {
 	private List<String> ids;
 	private List<String> titles;
 	private List<Double> probabilities;
+	private int textLength = -1;
+	private int processedLength = -1;
+	private int sections = 1;
 	
 	public RecommendationResult(List<Topic> mauiTopics) {
 		this(mauiTopics, 0.0);
@@ -53,6 +56,45 @@ public class RecommendationResult {
 		return probabilities.get(i);
 	}
 	
+	/**
+	 * Records that the text was shortened to fit the tagger's text budget
+	 * before topics were extracted.
+	 *
+	 * @param textLength Length of the original text, in characters
+	 * @param processedLength Length of the text that was actually processed, in characters
+	 */
+	public void setTruncated(int textLength, int processedLength) {
+		this.textLength = textLength;
+		this.processedLength = processedLength;
+	}
+	
+	public boolean isTruncated() {
+		return textLength != -1;
+	}
+	
+	/**
+	 * Records that the text was split into several sections that were processed separately.
+	 */
+	public void setSections(int sections) {
+		this.sections = sections;
+	}
+	
+	public int getSections() {
+		return sections;
+	}
+	
+	/**
+	 * Rough estimate of the memory taken up by this result, in bytes.
+	 */
+	public long estimateSize() {
+		long result = 0;
+		for (int i = 0; i < ids.size(); i++) {
+			// Two strings, a boxed double, and list slots
+			result += 2 * (ids.get(i).length() + titles.get(i).length()) + 100;
+		}
+		return result;
+	}
+	
 	@Override
 	public String toString() {
 		StringBuffer s = new StringBuffer();
@@ -81,5 +123,13 @@ public class RecommendationResult {
 			results.add(result);
 		}
 		root.set("topics", results);
+		root.put("truncated", isTruncated());
+		if (isTruncated()) {
+			root.put("text_length", textLength);
+			root.put("processed_length", processedLength);
+		}
+		if (sections > 1) {
+			root.put("sections", sections);
+		}
 	}
 }
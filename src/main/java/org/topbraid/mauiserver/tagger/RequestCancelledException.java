@@ -0,0 +1,14 @@
+package org.topbraid.mauiserver.tagger;
+
+import org.topbraid.mauiserver.MauiServerException;
+
+/**
+ * Thrown when the work for a request is abandoned because the request was cancelled.
+ */
+@SuppressWarnings("serial")
+public class RequestCancelledException extends MauiServerException {
+
+	public RequestCancelledException() {
+		super("Request was cancelled");
+	}
+}
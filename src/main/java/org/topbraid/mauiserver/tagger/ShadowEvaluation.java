@@ -0,0 +1,239 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.entopix.maui.main.MauiWrapper;
+import com.entopix.maui.util.Topic;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Evaluates a newly trained candidate model on live traffic before it
+ * replaces the active model. A sample of the documents processed by the
+ * active model is processed again by the candidate, in the background,
+ * and the latencies and topics of both are compared. Shadow runs happen
+ * on a single background thread shared by all taggers; samples are
+ * dropped rather than queued up if it falls behind.
+ * <p>
+ * The latency of the active model as seen by live requests includes
+ * contention with other requests, which the background thread doesn't
+ * see, so comparing it to the candidate's would favour the candidate.
+ * Instead, each sampled document is run again by both models, back to
+ * back on the background thread, alternating which goes first, and the
+ * two times are compared. The active model's runs use a separate copy of
+ * the active model rather than an instance from the live pool, so that
+ * shadow runs never make live requests wait.
+ */
+public class ShadowEvaluation {
+	private final static Logger log = LoggerFactory.getLogger(ShadowEvaluation.class);
+
+	private final static int maxPendingSamples = 8;
+	private final static int latencyCapacity = 1000;
+
+	private final static ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "maui-shadow");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+
+	private final MauiWrapperPool activePool;
+	private final MauiWrapperPool candidatePool;
+	private final Consumer<ShadowEvaluation> onSample;
+	private final Date startTime = new Date();
+	private final LatencyRecorder activeLatency = new LatencyRecorder(latencyCapacity);
+	private final LatencyRecorder candidateLatency = new LatencyRecorder(latencyCapacity);
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	// Only accessed on the background thread
+	private boolean candidateFirst = false;
+	private double overlapSum = 0;
+	private long overlapCount = 0;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param activePool Pool with a separate copy of the active model, for timing it
+	 * @param candidatePool Pool for the candidate model
+	 * @param onSample Called on the background thread after each completed sample
+	 */
+	public ShadowEvaluation(MauiWrapperPool activePool, MauiWrapperPool candidatePool, Consumer<ShadowEvaluation> onSample) {
+		this.activePool = activePool;
+		this.candidatePool = candidatePool;
+		this.onSample = onSample;
+	}
+
+	/**
+	 * Offers a document processed by the active model for processing
+	 * by the candidate. Only a fraction of documents is actually processed.
+	 *
+	 * @param activeTopics The topics found by the active model
+	 * @param sampleRate Fraction of documents to process, 0..1
+	 */
+	public void offer(String text, int maxTopics, List<Topic> activeTopics, double sampleRate) {
+		if (closed || ThreadLocalRandom.current().nextDouble() >= sampleRate) return;
+		if (pending.incrementAndGet() > maxPendingSamples) {
+			pending.decrementAndGet();
+			dropped.incrementAndGet();
+			return;
+		}
+		executor.execute(() -> {
+			try {
+				if (!closed) {
+					runSample(text, maxTopics, activeTopics);
+				}
+			} finally {
+				pending.decrementAndGet();
+			}
+		});
+	}
+
+	private void runSample(String text, int maxTopics, List<Topic> activeTopics) {
+		List<Topic> candidateTopics;
+		long start;
+		long activeNanos;
+		long candidateNanos;
+		MauiWrapper active;
+		try {
+			active = activePool.borrow();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			MauiWrapper candidate = candidatePool.borrow();
+			try {
+				candidateFirst = !candidateFirst;
+				if (candidateFirst) {
+					start = System.nanoTime();
+					candidateTopics = candidate.extractTopicsFromText(text, maxTopics);
+					candidateNanos = System.nanoTime() - start;
+					start = System.nanoTime();
+					active.extractTopicsFromText(text, maxTopics);
+					activeNanos = System.nanoTime() - start;
+				} else {
+					start = System.nanoTime();
+					active.extractTopicsFromText(text, maxTopics);
+					activeNanos = System.nanoTime() - start;
+					start = System.nanoTime();
+					candidateTopics = candidate.extractTopicsFromText(text, maxTopics);
+					candidateNanos = System.nanoTime() - start;
+				}
+			} finally {
+				candidatePool.release(candidate);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (Exception ex) {
+			log.warn("Error running candidate model in shadow mode", ex);
+			failed.incrementAndGet();
+			return;
+		} finally {
+			activePool.release(active);
+		}
+		activeLatency.record(activeNanos);
+		candidateLatency.record(candidateNanos);
+		synchronized (this) {
+			overlapSum += overlap(activeTopics, candidateTopics);
+			overlapCount++;
+		}
+		try {
+			onSample.accept(this);
+		} catch (RuntimeException ex) {
+			log.error("Error after shadow sample", ex);
+		}
+	}
+
+	/**
+	 * Jaccard similarity of the two topic sets; 1 if both are empty.
+	 */
+	private static double overlap(List<Topic> a, List<Topic> b) {
+		Set<String> union = new HashSet<String>();
+		Set<String> idsA = new HashSet<String>();
+		for (Topic t: a) {
+			idsA.add(t.getId());
+		}
+		union.addAll(idsA);
+		int intersection = 0;
+		for (Topic t: b) {
+			if (idsA.contains(t.getId())) intersection++;
+			union.add(t.getId());
+		}
+		return union.isEmpty() ? 1 : (double) intersection / union.size();
+	}
+
+	/**
+	 * Number of documents processed by both models.
+	 */
+	public long getSampleCount() {
+		return candidateLatency.getCount();
+	}
+
+	/**
+	 * @return The candidate's p99 latency divided by the active model's, or 0 if there are no samples yet
+	 */
+	public double getP99Ratio() {
+		double active = activeLatency.getPercentileMillis(99);
+		double candidate = candidateLatency.getPercentileMillis(99);
+		if (getSampleCount() == 0 || active <= 0) return 0;
+		return candidate / active;
+	}
+
+	public synchronized double getAverageOverlap() {
+		return overlapCount == 0 ? 0 : overlapSum / overlapCount;
+	}
+
+	/**
+	 * @return Why the candidate may not be promoted, or <code>null</code> if it may
+	 */
+	public String getRefusalReason(int minSamples, double maxP99Ratio) {
+		if (getSampleCount() < minSamples) {
+			return "Candidate has been evaluated on " + getSampleCount() + " documents; " +
+					minSamples + " are required";
+		}
+		double ratio = getP99Ratio();
+		if (ratio > maxP99Ratio) {
+			return String.format("Candidate's p99 latency of %.1fms is %.2f times the active model's %.1fms; at most %.2f is allowed",
+					candidateLatency.getPercentileMillis(99), ratio, activeLatency.getPercentileMillis(99), maxP99Ratio);
+		}
+		return null;
+	}
+
+	/**
+	 * Stops taking samples. Samples already running still complete.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	public ObjectNode toJSON(int minSamples, double maxP99Ratio) {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("start_time", JobReport.formatDate(startTime));
+		result.put("samples", getSampleCount());
+		result.put("dropped", dropped.get());
+		result.put("failed", failed.get());
+		result.set("active_latency", activeLatency.toJSON());
+		result.set("candidate_latency", candidateLatency.toJSON());
+		result.put("p99_ratio", getP99Ratio());
+		result.put("avg_topic_overlap", getAverageOverlap());
+		String refusal = getRefusalReason(minSamples, maxP99Ratio);
+		result.put("can_promote", refusal == null);
+		if (refusal != null) {
+			result.put("refusal_reason", refusal);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,70 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Coalesces identical suggest requests that are in progress at the same
+ * time, so that only one of them runs the extraction and all others wait
+ * for and share its result. Requests are identical if they have the same
+ * {@link RecommendationCache.Key}, that is, same tagger, text and tagger
+ * generation.
+ */
+public class SuggestCoalescer {
+	private final ConcurrentHashMap<RecommendationCache.Key, CompletableFuture<RecommendationResult>> inFlight =
+			new ConcurrentHashMap<RecommendationCache.Key, CompletableFuture<RecommendationResult>>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	/**
+	 * Runs the computation, unless an identical one is already running,
+	 * in which case its result is returned instead. Waiting for another
+	 * request's computation ends at the deadline, or when this request is
+	 * cancelled. If the other request's computation is abandoned because
+	 * of its own deadline, this request runs the computation itself, or
+	 * waits for another identical one. Each request is counted as
+	 * coalesced at most once.
+	 */
+	public RecommendationResult run(RecommendationCache.Key key, Deadline deadline,
+			Supplier<RecommendationResult> computation) {
+		return run(key, deadline, computation, false);
+	}
+
+	private RecommendationResult run(RecommendationCache.Key key, Deadline deadline,
+			Supplier<RecommendationResult> computation, boolean counted) {
+		CompletableFuture<RecommendationResult> own = new CompletableFuture<RecommendationResult>();
+		CompletableFuture<RecommendationResult> running = inFlight.putIfAbsent(key, own);
+		if (running != null) {
+			if (!counted) coalescedCount.incrementAndGet();
+			try {
+				return deadline.await(running);
+			} catch (DeadlineExceededException | RequestCancelledException ex) {
+				// Our own deadline, or else the other request's
+				deadline.check();
+				inFlight.remove(key, running);
+				return run(key, deadline, computation, true);
+			}
+		}
+		try {
+			RecommendationResult result = computation.get();
+			own.complete(result);
+			return result;
+		} catch (RuntimeException ex) {
+			own.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			inFlight.remove(key, own);
+		}
+	}
+
+	public ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("in_flight", inFlight.size());
+		result.put("coalesced", coalescedCount.get());
+		return result;
+	}
+}
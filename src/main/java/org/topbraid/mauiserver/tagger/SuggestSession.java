@@ -0,0 +1,93 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.topbraid.mauiserver.tagger.TextSections.TopicMerger;
+
+import com.entopix.maui.util.Topic;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A document that is submitted to a tagger in chunks as it grows, such
+ * as a live transcript. Each chunk is processed on its own, preceded by
+ * the end of the text before it for context, and its topics are merged
+ * into the running results of the session. So each append costs work
+ * proportional to the chunk, not to the whole text so far. The running
+ * results are merged the same way as the sections of a long text, see
+ * {@link TextSections}, with each chunk weighted by its length, so a
+ * topic found in a short chunk only counts for little against topics
+ * that come up throughout the text.
+ */
+public class SuggestSession {
+	private final String id = UUID.randomUUID().toString();
+	private final boolean dictionary;
+	private final Date startTime = new Date();
+	private final TopicMerger merger = new TopicMerger();
+	private String tail = "";
+	private long textLength = 0;
+	private volatile long lastAccess = System.currentTimeMillis();
+
+	/**
+	 * @param dictionary Use the dictionary engine instead of Maui's extraction
+	 */
+	public SuggestSession(boolean dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public boolean usesDictionary() {
+		return dictionary;
+	}
+
+	public long getLastAccess() {
+		return lastAccess;
+	}
+
+	void touch() {
+		lastAccess = System.currentTimeMillis();
+	}
+
+	/**
+	 * Processes the next chunk of the text. Appends to the same session
+	 * are processed one at a time, in order.
+	 *
+	 * @param extractor Finds the topics in a piece of text
+	 * @return The topics of the text so far
+	 */
+	public synchronized List<Topic> append(String chunk, Function<String, List<Topic>> extractor, int maxTopics) {
+		touch();
+		String withContext = tail.isEmpty() ? chunk : tail + " " + chunk;
+		merger.add(extractor.apply(withContext), Math.max(1, chunk.length()));
+		tail = TextSections.tail(chunk.length() >= TextSections.overlap ? chunk : withContext);
+		textLength += chunk.length();
+		touch();
+		return merger.getTopics(maxTopics);
+	}
+
+	/**
+	 * @return The topics of the text so far
+	 */
+	public synchronized List<Topic> getTopics(int maxTopics) {
+		touch();
+		return merger.getTopics(maxTopics);
+	}
+
+	public synchronized ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("id", id);
+		result.put("engine", dictionary ? "dictionary" : "maui");
+		result.put("start_time", JobReport.formatDate(startTime));
+		result.put("last_access", JobReport.formatDate(new Date(lastAccess)));
+		result.put("chunks", merger.getSectionCount());
+		result.put("text_length", textLength);
+		result.put("distinct_topics", merger.getTopicCount());
+		return result;
+	}
+}
@@ -0,0 +1,154 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The open {@link SuggestSession}s of a tagger, up to a maximum number.
+ * Sessions that have not been used for longer than the idle timeout are
+ * removed. The sessions are kept in order of last lookup, so expired
+ * sessions are found at the front without looking at the others; this
+ * happens whenever a session is opened. Only if the maximum has been
+ * reached are all sessions checked, as sessions can also be used
+ * without being looked up again, for example while processing a long
+ * chunk. A session that is looked up after it has expired is removed.
+ */
+public class SuggestSessions {
+	private final static Logger log = LoggerFactory.getLogger(SuggestSessions.class);
+
+	// Guarded by this; in access order
+	private final LinkedHashMap<String, SuggestSession> sessions = new LinkedHashMap<String, SuggestSession>(16, 0.75f, true);
+	private final long timeoutMillis;
+	private final int maxSessions;
+	private long expiredCount = 0;
+	private long rejectedCount = 0;
+
+	/**
+	 * @param timeoutSeconds Idle time after which sessions are removed
+	 * @param maxSessions Maximum number of open sessions
+	 */
+	public SuggestSessions(int timeoutSeconds, int maxSessions) {
+		this.timeoutMillis = timeoutSeconds * 1000L;
+		this.maxSessions = Math.max(1, maxSessions);
+	}
+
+	public int getTimeoutSeconds() {
+		return (int) (timeoutMillis / 1000);
+	}
+
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	/**
+	 * @return The new session, or <code>null</code> if the maximum number of sessions are open
+	 */
+	public synchronized SuggestSession open(boolean dictionary) {
+		long cutoff = System.currentTimeMillis() - timeoutMillis;
+		expireOldest(cutoff);
+		if (sessions.size() >= maxSessions) {
+			expireAll(cutoff);
+		}
+		if (sessions.size() >= maxSessions) {
+			rejectedCount++;
+			return null;
+		}
+		SuggestSession session = new SuggestSession(dictionary);
+		sessions.put(session.getId(), session);
+		return session;
+	}
+
+	/**
+	 * @return The session, or <code>null</code> if there is no such session or it has expired
+	 */
+	public synchronized SuggestSession get(String id) {
+		SuggestSession session = sessions.get(id);
+		if (session == null) return null;
+		if (isExpired(session, System.currentTimeMillis() - timeoutMillis)) {
+			remove(session);
+			return null;
+		}
+		session.touch();
+		return session;
+	}
+
+	/**
+	 * @return <code>true</code> if the session was open
+	 */
+	public synchronized boolean close(String id) {
+		return sessions.remove(id) != null;
+	}
+
+	public synchronized void closeAll() {
+		sessions.clear();
+	}
+
+	public synchronized int size() {
+		return sessions.size();
+	}
+
+	public synchronized long getExpiredCount() {
+		return expiredCount;
+	}
+
+	/**
+	 * Number of sessions that could not be opened because the maximum number were open
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * @return Estimated time until a session expires and a new one can be opened, at least 1
+	 */
+	public synchronized int getSecondsUntilExpiry() {
+		long oldest = System.currentTimeMillis();
+		for (SuggestSession session: sessions.values()) {
+			// The first session is the least recently looked up
+			oldest = session.getLastAccess();
+			break;
+		}
+		long millis = oldest + timeoutMillis - System.currentTimeMillis();
+		return (int) Math.max(1, (millis + 999) / 1000);
+	}
+
+	/**
+	 * Removes expired sessions from the front, stopping at the first one that is in use.
+	 */
+	private void expireOldest(long cutoff) {
+		Iterator<SuggestSession> it = sessions.values().iterator();
+		while (it.hasNext()) {
+			SuggestSession session = it.next();
+			if (!isExpired(session, cutoff)) return;
+			it.remove();
+			onExpired(session);
+		}
+	}
+
+	private void expireAll(long cutoff) {
+		Iterator<SuggestSession> it = sessions.values().iterator();
+		while (it.hasNext()) {
+			SuggestSession session = it.next();
+			if (!isExpired(session, cutoff)) continue;
+			it.remove();
+			onExpired(session);
+		}
+	}
+
+	private static boolean isExpired(SuggestSession session, long cutoff) {
+		return session.getLastAccess() < cutoff;
+	}
+
+	private void remove(SuggestSession session) {
+		sessions.remove(session.getId());
+		onExpired(session);
+	}
+
+	private void onExpired(SuggestSession session) {
+		expiredCount++;
+		log.debug("Expired suggest session " + session.getId());
+	}
+}
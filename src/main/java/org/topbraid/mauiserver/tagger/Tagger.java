@@ -1,17 +1,54 @@
 package org.topbraid.mauiserver.tagger;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.topbraid.mauiserver.MauiServer;
 import org.topbraid.mauiserver.MauiServerException;
 import org.topbraid.mauiserver.persistence.TaggerStore;
 
 import com.entopix.maui.filters.MauiFilter;
 import com.entopix.maui.main.MauiWrapper;
+import com.entopix.maui.util.Topic;
 import com.entopix.maui.vocab.Vocabulary;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.jena.rdf.model.Model;
 
+/**
+ * A tagger. Everything needed for serving suggestions is kept in an
+ * immutable {@link TaggerSnapshot}. Suggestions are served from the
+ * current snapshot without locking. Changes to configuration, vocabulary
+ * or model build a complete new snapshot off to the side and then swap
+ * it in, so that requests in progress finish on the old one.
+ */
 public class Tagger {
 	private final static Logger log = LoggerFactory.getLogger(Tagger.class);
+	
+	private final static int memoryPerDiskByte = 4;
+	
+	// Loads taggers in the background, so that suggest requests don't wait for it
+	private final static ExecutorService loader = Executors.newFixedThreadPool(
+			Math.max(1, Runtime.getRuntime().availableProcessors() / 2), r -> {
+				Thread thread = new Thread(r, "maui-loader");
+				thread.setDaemon(true);
+				return thread;
+			});
 
 	/**
 	 * Creates a Tagger instance that is connected to a particular
@@ -30,26 +67,48 @@ public class Tagger {
 	
 	private final String id;
 	private final TaggerStore store;
-	private TaggerConfiguration configuration;
-	private Model jenaVocabulary = null;		// lazy loading
-	private Vocabulary mauiVocabulary = null;	// lazy loading
+	private final AtomicReference<TaggerSnapshot> snapshot;
+	// Guards loading and publishing of snapshots; never held while serving suggestions
+	private final Object updateLock = new Object();
+	// The initial load in progress, shared by all threads that need it
+	private final AtomicReference<CompletableFuture<TaggerSnapshot>> loading = new AtomicReference<CompletableFuture<TaggerSnapshot>>();
+	private volatile Consumer<Tagger> loadListener = null;
+	private volatile long lastAccessMillis = System.currentTimeMillis();
+	private volatile long estimatedBytes = 0;
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong unloadCount = new AtomicLong();
+	private volatile ShadowEvaluation shadow = null;
+	private volatile ObjectNode lastShadowResult = null;
+	private volatile Warmup lastWarmup = null;
+	// Size and modification time of the model file that was last warmed up
+	private volatile String warmedModelVersion = null;
+	// Whether the label dictionary has been used, so that it is built along with the vocabulary
+	private volatile boolean dictionaryInUse = false;
 	private JobController trainer;
 	private JobController crossValidator;
-	private MauiFilter mauiModel = null;		// lazy loading
-	private MauiWrapper mauiWrapper = null;		// lazy loading
+	private final RecommendationCache.Stats cacheStats = new RecommendationCache.Stats();
+	private final SuggestCoalescer coalescer = new SuggestCoalescer();
+	private final Deadline.Stats deadlineStats = new Deadline.Stats();
+	private final ConcurrencyLimiter concurrencyLimiter;
+	private final Bulkhead bulkhead;
+	private final SuggestSessions sessions = new SuggestSessions(
+			MauiServer.getSuggestSessionTimeoutSeconds(), MauiServer.getMaxSuggestSessions());
 	
 	private Tagger(TaggerConfiguration config, TaggerStore store) {
 		this.id = config.getId();
-		this.configuration = config;
+		this.snapshot = new AtomicReference<TaggerSnapshot>(new TaggerSnapshot(config));
 		this.store = store;
 		this.trainer = new JobController(store.getTrainerReportStore(this.id));
 		this.crossValidator = new JobController(store.getCrossValidatorReportStore(this.id));
+		this.concurrencyLimiter = new ConcurrencyLimiter(config.getEffectiveWrapperPoolSize(), config.getMaxConcurrency());
+		this.bulkhead = new Bulkhead(config.getEffectiveBulkheadMaxInFlight(), config.getEffectiveBulkheadMaxQueued(),
+				config.getBulkheadInteractiveShare(), config.getBulkheadInteractiveWeight());
 	}
 	
 	public String getId() {
 		return id;
 	}
-
+	
 	public boolean isTrained() {
 		return store.getMauiModelStore(id).contains();
 	}
@@ -58,61 +117,552 @@ public class Tagger {
 		return store.getVocabularyStore(id).contains();
 	}
 	
+	/**
+	 * Parses the vocabulary from the store. The Jena model is not kept,
+	 * as it takes up several times the memory of the Maui vocabulary built
+	 * from it, so this is expensive and only for operations that need the
+	 * graph. To serve the vocabulary as it is, use {@link #getVocabularyFile()}.
+	 *
+	 * @return The vocabulary, or <code>null</code> if there is none
+	 */
 	public Model getVocabularyJena() {
-		if (jenaVocabulary == null) {
-			jenaVocabulary = store.getVocabularyStore(id).get();
-		}
-		return jenaVocabulary;
+		return store.getVocabularyStore(id).get();
 	}
-
+	
+	/**
+	 * @return The stored vocabulary in Turtle syntax, or <code>null</code> if there is none
+	 */
+	public File getVocabularyFile() {
+		File file = store.getVocabularyFile(id);
+		return file.exists() ? file : null;
+	}
+	
 	public Vocabulary getVocabularyMaui() {
-		if (!hasVocabulary()) return null;
-		if (mauiVocabulary == null) {
-			mauiVocabulary = toMauiVocabulary(getVocabularyJena());
+		return getSnapshot().getVocabulary();
+	}
+	
+	/**
+	 * Returns the current snapshot, loading vocabulary and model from
+	 * the store first if that hasn't happened yet. The load happens only
+	 * once, in the background; threads that need the snapshot while it is
+	 * being loaded wait for the load to finish.
+	 */
+	public TaggerSnapshot getSnapshot() {
+		lastAccessMillis = System.currentTimeMillis();
+		TaggerSnapshot current = snapshot.get();
+		if (current.isLoaded()) return current;
+		if (Thread.holdsLock(updateLock)) {
+			// Waiting for the background load would deadlock, as it needs the lock
+			return load();
+		}
+		try {
+			return startLoading().get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new MauiServerException("Interrupted while waiting for tagger " + id + " to load", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new MauiServerException(ex.getCause());
+		}
+	}
+	
+	/**
+	 * Whether vocabulary and model are being loaded right now, so that
+	 * a call to {@link #getSnapshot()} would have to wait for the load
+	 */
+	public boolean isLoading() {
+		return loading.get() != null;
+	}
+	
+	/**
+	 * Starts loading vocabulary and model in the background, unless they
+	 * have been loaded already, for callers that would rather not wait.
+	 *
+	 * @return <code>true</code> if they have been loaded, so that {@link #getSnapshot()} returns right away
+	 */
+	public boolean loadInBackground() {
+		lastAccessMillis = System.currentTimeMillis();
+		if (snapshot.get().isLoaded()) return true;
+		startLoading();
+		return false;
+	}
+	
+	/**
+	 * @return The load in progress, started if necessary; completes after the load listener has run
+	 */
+	private CompletableFuture<TaggerSnapshot> startLoading() {
+		CompletableFuture<TaggerSnapshot> task = new CompletableFuture<TaggerSnapshot>();
+		CompletableFuture<TaggerSnapshot> existing = loading.compareAndExchange(null, task);
+		if (existing != null) return existing;
+		loader.execute(() -> {
+			TaggerSnapshot result;
+			try {
+				result = load();
+			} catch (Throwable ex) {
+				task.completeExceptionally(ex);
+				return;
+			} finally {
+				// Later calls find the loaded snapshot, or retry if loading failed
+				loading.compareAndSet(task, null);
+			}
+			Consumer<Tagger> listener = loadListener;
+			if (listener != null) {
+				// Outside of the update lock, as the listener may unload other taggers
+				try {
+					listener.accept(this);
+				} catch (RuntimeException ex) {
+					log.error("Error after loading tagger " + id, ex);
+				}
+			}
+			task.complete(result);
+		});
+		return task;
+	}
+	
+	private TaggerSnapshot load() {
+		synchronized (updateLock) {
+			TaggerSnapshot current = snapshot.get();
+			if (current.isLoaded()) return current;
+			log.info("Loading tagger " + id);
+			Model jena = hasVocabulary() ? getVocabularyJena() : null;
+			Vocabulary vocabulary = toMauiVocabulary(jena, current.getConfiguration());
+			PhraseDictionary dictionary = jena != null && dictionaryInUse ? buildDictionary(jena, current.getConfiguration()) : null;
+			// Let the Jena model go before the model is loaded; see getVocabularyJena()
+			jena = null;
+			MauiWrapperPool pool = createWrapperPool(vocabulary, null, current.getConfiguration());
+			if (pool != null) {
+				pool.prestart();
+				if (isWarmedUp()) {
+					log.info("Skipping warmup of tagger " + id + ", as its model was warmed up before");
+				} else {
+					warmUp(pool, current.getConfiguration());
+				}
+			}
+			current = current.toLoaded(vocabulary, pool, dictionary);
+			snapshot.set(current);
+			estimatedBytes = estimateBytes();
+			loadCount.incrementAndGet();
+			if (pool != null && store.getCandidateModelStore(id).contains()) {
+				MauiFilter candidate = store.getCandidateModelStore(id).get();
+				if (candidate != null) {
+					log.info("Resuming shadow evaluation of candidate model for tagger " + id);
+					shadow = createShadowEvaluation(vocabulary, candidate, current.getConfiguration());
+				}
+			}
+			return current;
 		}
-		return mauiVocabulary;
+	}
+	
+	/**
+	 * Returns the current snapshot, without loading anything.
+	 */
+	public TaggerSnapshot getSnapshotIfLoaded() {
+		return snapshot.get();
 	}
 	
 	/**
 	 * Sets the vocabulary model.
-	 * 
+	 *
 	 * TODO: The two awkward parameters indicate that we probably should have our own Vocabulary class that encapsulates both
-	 * 
-	 * @param model The vocabulary as a Jena model using SKOS; <code>null</code> deletes the vocabulary
+	 *
+	 * @param model The vocabulary as a Jena model using SKOS; <code>null</code> deletes the vocabulary. Only stored, not kept in memory
 	 * @param mauiVocabulary Must be the result of {@link #toMauiVocabulary(Model)}
 	 */
 	public void setVocabulary(Model model, Vocabulary mauiVocabulary) {
-		this.jenaVocabulary = model;
-		this.mauiVocabulary = mauiVocabulary;
-		store.getVocabularyStore(id).put(model);
+		synchronized (updateLock) {
+			// The candidate was trained against the old vocabulary
+			discardCandidate();
+			if (model != null) {
+				model.setNsPrefix("skos", "http://www.w3.org/2004/02/skos/core#");
+			}
+			store.getVocabularyStore(id).put(model);
+			TaggerSnapshot current = snapshot.get();
+			PhraseDictionary dictionary = model != null && dictionaryInUse ? buildDictionary(model, current.getConfiguration()) : null;
+			publish(current.getConfiguration(), mauiVocabulary,
+					createWrapperPool(mauiVocabulary, null, current.getConfiguration()), dictionary);
+		}
 	}
 	
+	/**
+	 * The configuration. Must not be modified; use {@link TaggerConfiguration#copy()}
+	 * and {@link #setConfiguration(TaggerConfiguration)} instead.
+	 */
 	public TaggerConfiguration getConfiguration() {
-		return configuration;
+		return snapshot.get().getConfiguration();
 	}
 	
 	public void setConfiguration(TaggerConfiguration configuration) {
-		this.configuration = configuration;
-		store.getConfigurationStore(id).put(configuration);
+		synchronized (updateLock) {
+			store.getConfigurationStore(id).put(configuration);
+			concurrencyLimiter.setMaxLimit(configuration.getMaxConcurrency());
+			bulkhead.setLimits(configuration.getEffectiveBulkheadMaxInFlight(), configuration.getEffectiveBulkheadMaxQueued(),
+					configuration.getBulkheadInteractiveShare(), configuration.getBulkheadInteractiveWeight());
+			TaggerSnapshot current = snapshot.get();
+			if (!current.isLoaded()) {
+				snapshot.set(new TaggerSnapshot(current.getGeneration() + 1, configuration, null, null, false));
+				invalidateCachedResults();
+				return;
+			}
+			MauiWrapperPool pool = current.getWrapperPool();
+			if (pool != null && (pool.getSize() != configuration.getEffectiveWrapperPoolSize() ||
+					configuration.isCompileClassifier() != current.getConfiguration().isCompileClassifier() ||
+					!configuration.getEffectiveFeatureProfile().hasSameCandidateSettings(
+							current.getConfiguration().getEffectiveFeatureProfile()))) {
+				pool = createWrapperPool(current.getVocabulary(), null, configuration);
+			}
+			publish(configuration, current.getVocabulary(), pool);
+		}
 	}
 	
 	public JobController getTrainer() {
 		return trainer;
 	}
-
-	private MauiFilter getMauiModel() {
-		if (mauiModel == null) {
-			mauiModel = store.getMauiModelStore(id).get();
+	
+	/**
+	 * Sets and stores a new model. The new model is made ready for
+	 * suggestions before it replaces the old one. Any candidate model
+	 * is discarded.
+	 *
+	 * @param mauiModel The new model; <code>null</code> deletes the model
+	 */
+	public void setMauiModel(MauiFilter mauiModel) {
+		synchronized (updateLock) {
+			discardCandidate();
+			installModel(mauiModel);
 		}
-		return mauiModel;
 	}
 	
-	public void setMauiModel(MauiFilter mauiModel) {
-		this.mauiModel = mauiModel;
-		store.getMauiModelStore(id).put(mauiModel);
-		mauiWrapper = null;
+	/**
+	 * Puts a newly trained model into use. If shadow evaluation is enabled
+	 * and the tagger already has a model, the new model is instead stored
+	 * as a candidate, and evaluated on live traffic until it is promoted
+	 * with {@link #promoteCandidate()} or discarded.
+	 *
+	 * @return <code>true</code> if the model was stored as a candidate
+	 */
+	public boolean setTrainedModel(MauiFilter mauiModel) {
+		synchronized (updateLock) {
+			TaggerSnapshot current = getSnapshot();
+			if (!current.getConfiguration().isShadowEvaluation() || !current.canSuggest()) {
+				setMauiModel(mauiModel);
+				return false;
+			}
+			discardCandidate();
+			store.getCandidateModelStore(id).put(mauiModel);
+			shadow = createShadowEvaluation(current.getVocabulary(), mauiModel, current.getConfiguration());
+			log.info("Started shadow evaluation of candidate model for tagger " + id);
+			return true;
+		}
 	}
-
+	
+	/**
+	 * @return The evaluation of the candidate model, or <code>null</code> if there is none
+	 */
+	public ShadowEvaluation getShadowEvaluation() {
+		return shadow;
+	}
+	
+	/**
+	 * @return The final status of the last candidate model that was promoted or discarded, or <code>null</code>
+	 */
+	public ObjectNode getLastShadowEvaluationResult() {
+		return lastShadowResult;
+	}
+	
+	/**
+	 * Replaces the active model with the candidate model, unless the
+	 * candidate has not been evaluated on enough documents or its p99
+	 * latency is too much worse than the active model's.
+	 *
+	 * @return Why the candidate was not promoted, or <code>null</code> if it was
+	 */
+	public String promoteCandidate() {
+		synchronized (updateLock) {
+			ShadowEvaluation evaluation = shadow;
+			if (evaluation == null) return "There is no candidate model";
+			TaggerConfiguration config = getConfiguration();
+			String refusal = evaluation.getRefusalReason(config.getShadowMinSamples(), config.getShadowMaxP99Ratio());
+			if (refusal != null) return refusal;
+			MauiFilter candidate = store.getCandidateModelStore(id).get();
+			if (candidate == null) {
+				throw new MauiServerException("Candidate model not found in store");
+			}
+			endShadowEvaluation("promoted");
+			installModel(candidate);
+			store.getCandidateModelStore(id).delete();
+			log.info("Promoted candidate model for tagger " + id);
+			return null;
+		}
+	}
+	
+	/**
+	 * Deletes the candidate model, if any.
+	 */
+	public void discardCandidate() {
+		synchronized (updateLock) {
+			if (shadow != null) {
+				endShadowEvaluation("discarded");
+				log.info("Discarded candidate model for tagger " + id);
+			}
+			if (store.getCandidateModelStore(id).contains()) {
+				store.getCandidateModelStore(id).delete();
+			}
+		}
+	}
+	
+	private void endShadowEvaluation(String outcome) {
+		TaggerConfiguration config = getConfiguration();
+		shadow.close();
+		ObjectNode result = shadow.toJSON(config.getShadowMinSamples(), config.getShadowMaxP99Ratio());
+		result.put("outcome", outcome);
+		lastShadowResult = result;
+		shadow = null;
+	}
+	
+	private void onShadowSample(ShadowEvaluation evaluation) {
+		TaggerConfiguration config = getConfiguration();
+		if (!config.isShadowAutoPromote() || evaluation != shadow) return;
+		if (evaluation.getRefusalReason(config.getShadowMinSamples(), config.getShadowMaxP99Ratio()) != null) return;
+		promoteCandidate();
+	}
+	
+	private void installModel(MauiFilter mauiModel) {
+		synchronized (updateLock) {
+			store.getMauiModelStore(id).put(mauiModel);
+			TaggerSnapshot current = getSnapshot();
+			MauiWrapperPool pool = null;
+			if (mauiModel != null) {
+				pool = createWrapperPool(current.getVocabulary(), mauiModel, current.getConfiguration());
+			}
+			publish(current.getConfiguration(), current.getVocabulary(), pool);
+		}
+	}
+	
+	private void publish(TaggerConfiguration configuration, Vocabulary vocabulary, MauiWrapperPool pool) {
+		publish(configuration, vocabulary, pool, null);
+	}
+	
+	/**
+	 * @param dictionary The label dictionary of a new vocabulary, or <code>null</code>
+	 *        to keep the current one if vocabulary and language settings are unchanged
+	 */
+	private void publish(TaggerConfiguration configuration, Vocabulary vocabulary, MauiWrapperPool pool, PhraseDictionary dictionary) {
+		if (pool != null) {
+			pool.prestart();
+			if (pool != snapshot.get().getWrapperPool()) {
+				warmUp(pool, configuration);
+			}
+		}
+		TaggerSnapshot next = snapshot.get().next(configuration, vocabulary, pool, dictionary);
+		if (vocabulary != null && dictionaryInUse && next.getDictionaryIfBuilt() == null) {
+			// Language settings changed; rebuild before requests need it
+			getDictionary(next);
+		}
+		snapshot.set(next);
+		estimatedBytes = estimateBytes();
+		invalidateCachedResults();
+	}
+	
+	/**
+	 * Releases vocabulary and model, returning the tagger to the state it
+	 * was in before its first use. They are loaded from the store again
+	 * when next needed. Requests in progress finish on the old snapshot.
+	 * Taggers that are loading or evaluating a candidate model are not
+	 * unloaded.
+	 *
+	 * @return <code>true</code> if the tagger was unloaded
+	 */
+	public boolean unload() {
+		if (isLoading()) return false;
+		synchronized (updateLock) {
+			TaggerSnapshot current = snapshot.get();
+			if (!current.isLoaded() || shadow != null) return false;
+			snapshot.set(new TaggerSnapshot(current.getGeneration(), current.getConfiguration(), null, null, false));
+			estimatedBytes = 0;
+			unloadCount.incrementAndGet();
+			log.info("Unloaded tagger " + id);
+			return true;
+		}
+	}
+	
+	/**
+	 * Estimates the memory taken up by the loaded vocabulary and model as
+	 * a multiple of their size on disk. The in-memory representations of
+	 * Maui and Weka are several times larger than the files. The model
+	 * is counted once for every copy the wrapper pool holds, so this must
+	 * be called again after the pool has created its wrappers. The label
+	 * dictionary is counted once it has been built.
+	 */
+	private long estimateBytes() {
+		TaggerSnapshot current = snapshot.get();
+		long bytes = 0;
+		if (current.getVocabulary() != null) {
+			bytes += store.getVocabularyFile(id).length();
+		}
+		if (current.getWrapperPool() != null) {
+			bytes += store.getMauiModelFile(id).length() * current.getWrapperPool().getModelCopies();
+		}
+		bytes *= memoryPerDiskByte;
+		PhraseDictionary dictionary = current.getDictionaryIfBuilt();
+		if (dictionary != null) {
+			bytes += dictionary.getEstimatedBytes();
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Called after this tagger's vocabulary and model have been loaded on
+	 * first use, or again after {@link #unload()}
+	 */
+	public void setLoadListener(Consumer<Tagger> listener) {
+		this.loadListener = listener;
+	}
+	
+	public long getLastAccessMillis() {
+		return lastAccessMillis;
+	}
+	
+	/**
+	 * @return Estimated memory taken up by vocabulary and model; 0 if not loaded
+	 */
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+	
+	/**
+	 * Whether no suggest requests are in progress or waiting
+	 */
+	public boolean isIdle() {
+		return bulkhead.getInFlight() == 0 && bulkhead.getQueued() == 0 && !isLoading();
+	}
+	
+	public ObjectNode getMemoryJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("loaded", snapshot.get().isLoaded());
+		result.put("pinned", getConfiguration().isPinned());
+		result.put("estimated_bytes", estimatedBytes);
+		result.put("last_access_time", JobReport.formatDate(new Date(lastAccessMillis)));
+		result.put("loads", loadCount.get());
+		result.put("unloads", unloadCount.get());
+		return result;
+	}
+	
+	/**
+	 * Whether the stored model has been warmed up before. The code paths it
+	 * uses are then already loaded and compiled by the JVM, so a reload,
+	 * for example after the tagger was unloaded to save memory, needs no
+	 * warmup.
+	 */
+	private boolean isWarmedUp() {
+		String version = getModelVersion();
+		return version != null && version.equals(warmedModelVersion);
+	}
+	
+	private String getModelVersion() {
+		File file = store.getMauiModelFile(id);
+		return file.exists() ? file.length() + "@" + file.lastModified() : null;
+	}
+	
+	/**
+	 * Runs the stored warmup sample through a new pool before it is published.
+	 */
+	private void warmUp(MauiWrapperPool pool, TaggerConfiguration configuration) {
+		if (configuration.getWarmupMaxMillis() == 0) return;
+		List<String> sample;
+		try {
+			sample = store.getWarmupSampleStore(id).get();
+		} catch (MauiServerException ex) {
+			log.warn("Cannot read warmup sample for tagger " + id + ": " + ex.getMessage());
+			return;
+		}
+		if (sample == null || sample.isEmpty()) return;
+		Warmup warmup = new Warmup(sample, configuration.getMaxTopicsPerDocument(),
+				configuration.getTextBudget(), configuration.getWarmupMaxMillis());
+		warmup.run(pool);
+		lastWarmup = warmup;
+		warmedModelVersion = getModelVersion();
+	}
+	
+	/**
+	 * Stores documents for warming up models after they are loaded.
+	 */
+	public void setWarmupSample(List<String> texts) {
+		store.getWarmupSampleStore(id).put(texts);
+	}
+	
+	/**
+	 * @return The most recent warmup, or <code>null</code> if no model has been warmed up since the server started
+	 */
+	public Warmup getLastWarmup() {
+		return lastWarmup;
+	}
+	
+	/**
+	 * @param model The model to use, or <code>null</code> to load it from the store
+	 * @return A new pool, or <code>null</code> if vocabulary or model are missing
+	 */
+	private MauiWrapperPool createWrapperPool(Vocabulary vocabulary, MauiFilter model, TaggerConfiguration configuration) {
+		if (vocabulary == null) return null;
+		if (model == null) {
+			model = store.getMauiModelStore(id).get();
+			if (model == null) return null;
+		}
+		configuration.getEffectiveFeatureProfile().applyTo(model);
+		return new MauiWrapperPool(vocabulary, configuration.getStemmer(), model,
+				configuration.getEffectiveWrapperPoolSize(), configuration.isCompileClassifier());
+	}
+	
+	/**
+	 * Sets up shadow evaluation of a candidate model, with single-wrapper
+	 * pools for the candidate and for a separate copy of the active model,
+	 * so that the evaluation never takes instances from the live pool.
+	 */
+	private ShadowEvaluation createShadowEvaluation(Vocabulary vocabulary, MauiFilter candidate, TaggerConfiguration configuration) {
+		MauiFilter active = store.getMauiModelStore(id).get();
+		if (active == null) {
+			throw new MauiServerException("Active model not found in store");
+		}
+		return new ShadowEvaluation(createSingleWrapperPool(vocabulary, active, configuration),
+				createSingleWrapperPool(vocabulary, candidate, configuration), this::onShadowSample);
+	}
+	
+	private MauiWrapperPool createSingleWrapperPool(Vocabulary vocabulary, MauiFilter model, TaggerConfiguration configuration) {
+		configuration.getEffectiveFeatureProfile().applyTo(model);
+		return new MauiWrapperPool(vocabulary, configuration.getStemmer(), model, 1, configuration.isCompileClassifier());
+	}
+	
+	private void invalidateCachedResults() {
+		RecommendationCache.get().invalidate(id);
+	}
+	
+	public RecommendationCache.Stats getCacheStats() {
+		return cacheStats;
+	}
+	
+	public SuggestCoalescer getCoalescer() {
+		return coalescer;
+	}
+	
+	public Deadline.Stats getDeadlineStats() {
+		return deadlineStats;
+	}
+	
+	/**
+	 * Used for suggest requests if the configuration enables adaptive concurrency
+	 */
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+	
+	/**
+	 * Bounds the suggest requests in progress and waiting, for all suggest resources of this tagger
+	 */
+	public Bulkhead getBulkhead() {
+		return bulkhead;
+	}
+	
 	public void setTrainingReport(JobReport report) {
 		store.getTrainerReportStore(id).put(report);
 	}
@@ -120,34 +670,266 @@ public class Tagger {
 	public JobController getCrossValidator() {
 		return crossValidator;
 	}
-
+	
 	public RecommendationResult recommendTags(String text) {
-		if (!hasVocabulary() || !isTrained()) return null;
+		return recommendTags(text, null, Deadline.none());
+	}
+	
+	/**
+	 * @param sectionExecutor If not <code>null</code>, long texts are split into
+	 *        overlapping sections that are processed in parallel on this executor
+	 * @param deadline Work is abandoned when it passes or is cancelled
+	 * @throws DeadlineExceededException if the deadline passed before the result was computed
+	 * @throws RequestCancelledException if the deadline was cancelled before the result was computed
+	 */
+	public RecommendationResult recommendTags(String text, Executor sectionExecutor, Deadline deadline) {
+		final TaggerSnapshot current = getSnapshot();
+		if (!current.canSuggest()) return null;
+		return recommend(current, sectionExecutor == null ? null : "sections", text, deadline,
+				() -> extractTopics(current, text, sectionExecutor, deadline));
+	}
+	
+	/**
+	 * Recommends the concepts whose labels occur in the text, without
+	 * using the Maui model. Only needs a vocabulary.
+	 *
+	 * @return The result, or <code>null</code> if the tagger has no vocabulary
+	 */
+	public RecommendationResult recommendTagsFromDictionary(String text) {
+		final TaggerSnapshot current = getSnapshot();
+		if (current.getVocabulary() == null) return null;
+		return recommend(current, "dictionary", text, Deadline.none(), () -> matchDictionary(current, text));
+	}
+	
+	/**
+	 * Returns a cached result if there is one, or else computes it,
+	 * sharing the computation with identical concurrent requests.
+	 * Requests whose work is abandoned are counted in {@link #getDeadlineStats()}.
+	 */
+	private RecommendationResult recommend(TaggerSnapshot current, String variant, String text,
+			Deadline deadline, Supplier<RecommendationResult> computation) {
+		final RecommendationCache cache = RecommendationCache.get();
+		final RecommendationCache.Key key = RecommendationCache.createKey(
+				id, current.getGeneration(), variant, text);
+		if (cache.isEnabled()) {
+			RecommendationResult cached = cache.get(key, cacheStats);
+			if (cached != null) {
+				log.debug("Using cached recommendation result");
+				return cached;
+			}
+		}
+		try {
+			deadline.check();
+			return coalescer.run(key, deadline, () -> {
+				RecommendationResult result = computation.get();
+				if (cache.isEnabled()) {
+					cache.put(key, result, cacheStats);
+				}
+				return result;
+			});
+		} catch (DeadlineExceededException ex) {
+			deadlineStats.recordExpired();
+			throw ex;
+		} catch (RequestCancelledException ex) {
+			deadlineStats.recordCancelled();
+			throw ex;
+		}
+	}
+	
+	public SuggestSessions getSessions() {
+		return sessions;
+	}
+	
+	/**
+	 * Processes the next chunk of a text that is submitted in pieces.
+	 * If the work is abandoned, the chunk is not added to the session,
+	 * and this is counted in {@link #getDeadlineStats()}.
+	 *
+	 * @return The topics of the session's text so far, or <code>null</code>
+	 *         if the tagger is not ready for the session's engine
+	 */
+	public RecommendationResult appendToSession(SuggestSession session, String chunk, Deadline deadline) {
+		final TaggerSnapshot current = getSnapshot();
+		TaggerConfiguration configuration = current.getConfiguration();
+		int maxTopics = configuration.getMaxTopicsPerDocument();
+		Function<String, List<Topic>> extractor;
+		if (session.usesDictionary()) {
+			if (current.getVocabulary() == null) return null;
+			PhraseDictionary dictionary = getDictionary(current);
+			extractor = text -> {
+				deadline.check();
+				return dictionary.match(text, configuration.getStemmer(), configuration.getStopwords(), maxTopics);
+			};
+		} else {
+			if (!current.canSuggest()) return null;
+			extractor = text -> extractTopics(current.getWrapperPool(), text, maxTopics, deadline);
+		}
+		String input = chunk;
+		TextBudget budget = configuration.getTextBudget();
+		if (budget != null) {
+			input = budget.apply(chunk);
+		}
+		List<Topic> topics;
+		try {
+			topics = session.append(input, extractor, maxTopics);
+		} catch (DeadlineExceededException ex) {
+			deadlineStats.recordExpired();
+			throw ex;
+		} catch (RequestCancelledException ex) {
+			deadlineStats.recordCancelled();
+			throw ex;
+		}
+		RecommendationResult result = new RecommendationResult(topics, configuration.getProbabilityThreshold());
+		if (input != chunk) {
+			result.setTruncated(chunk.length(), input.length());
+		}
+		return result;
+	}
+	
+	/**
+	 * @return The topics of the session's text so far
+	 */
+	public RecommendationResult getSessionResult(SuggestSession session) {
+		TaggerConfiguration configuration = getConfiguration();
+		return new RecommendationResult(session.getTopics(configuration.getMaxTopicsPerDocument()),
+				configuration.getProbabilityThreshold());
+	}
+	
+	/**
+	 * Returns the snapshot's label dictionary, building it from the stored
+	 * vocabulary if this is the first use. From then on, the dictionary is
+	 * built along with the vocabulary whenever that is loaded or replaced.
+	 */
+	private PhraseDictionary getDictionary(TaggerSnapshot current) {
+		dictionaryInUse = true;
+		PhraseDictionary result = current.getDictionaryIfBuilt();
+		if (result != null) return result;
+		result = current.getDictionary(() -> {
+			Model vocabulary = getVocabularyJena();
+			if (vocabulary == null) {
+				throw new MauiServerException("Tagger has no vocabulary");
+			}
+			return buildDictionary(vocabulary, current.getConfiguration());
+		});
+		estimatedBytes = estimateBytes();
+		return result;
+	}
+	
+	private PhraseDictionary buildDictionary(Model vocabulary, TaggerConfiguration configuration) {
+		long start = System.currentTimeMillis();
+		PhraseDictionary result = new PhraseDictionary(vocabulary,
+				configuration.getEffectiveLang(), configuration.getStemmer(), configuration.getStopwords());
+		log.info("Built label dictionary for tagger " + id + ": " + result.getLabelCount() +
+				" labels in " + (System.currentTimeMillis() - start) + "ms");
+		return result;
+	}
+	
+	private RecommendationResult matchDictionary(TaggerSnapshot current, String text) {
+		TaggerConfiguration configuration = current.getConfiguration();
+		PhraseDictionary dictionary = getDictionary(current);
+		String input = text;
+		TextBudget budget = configuration.getTextBudget();
+		if (budget != null) {
+			input = budget.apply(text);
+		}
+		RecommendationResult result = new RecommendationResult(
+				dictionary.match(input, configuration.getStemmer(), configuration.getStopwords(),
+						configuration.getMaxTopicsPerDocument()),
+				configuration.getProbabilityThreshold());
+		if (input != text) {
+			result.setTruncated(text.length(), input.length());
+		}
+		return result;
+	}
+	
+	private RecommendationResult extractTopics(TaggerSnapshot current, String text, Executor sectionExecutor, Deadline deadline) {
+		TaggerConfiguration configuration = current.getConfiguration();
+		MauiWrapperPool pool = current.getWrapperPool();
+		int maxTopics = configuration.getMaxTopicsPerDocument();
+		String input = text;
+		TextBudget budget = configuration.getTextBudget();
+		if (budget != null) {
+			input = budget.apply(text);
+		}
+		if (log.isDebugEnabled()) {
+			String shortText = input.substring(0, Math.min(input.length(), 50));
+			if (input.length() > 50) shortText += "…";
+			log.debug("Running recommender on " + input.length() + "b: " + shortText);
+		}
+		List<String> sections = sectionExecutor == null
+				? Collections.singletonList(input)
+				: TextSections.split(input, pool.getSize());
+		List<Topic> topics;
+		if (sections.size() == 1) {
+			topics = extractTopics(pool, input, maxTopics, deadline);
+		} else {
+			log.debug("Running recommender on " + sections.size() + " sections in parallel");
+			List<CompletableFuture<List<Topic>>> futures = new ArrayList<CompletableFuture<List<Topic>>>();
+			for (String section: sections) {
+				futures.add(CompletableFuture.supplyAsync(() -> extractTopics(pool, section, maxTopics, deadline), sectionExecutor));
+			}
+			List<List<Topic>> sectionTopics = new ArrayList<List<Topic>>();
+			try {
+				for (CompletableFuture<List<Topic>> future: futures) {
+					sectionTopics.add(deadline.await(future));
+				}
+			} catch (RuntimeException ex) {
+				// Sections that haven't started yet are skipped
+				deadline.cancel();
+				throw ex;
+			}
+			topics = TextSections.mergeTopics(sectionTopics, maxTopics);
+		}
+		RecommendationResult result = new RecommendationResult(topics, configuration.getProbabilityThreshold());
+		if (input != text) {
+			log.debug("Text truncated from " + text.length() + " to " + input.length() + " characters (" + budget + ")");
+			result.setTruncated(text.length(), input.length());
+		}
+		if (sections.size() > 1) {
+			result.setSections(sections.size());
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Recommendation result: " + result);
+		}
+		return result;
+	}
+	
+	private List<Topic> extractTopics(MauiWrapperPool pool, String text, int maxTopics, Deadline deadline) {
 		try {
-			if (log.isDebugEnabled()) {
-				String shortText = text.substring(0, Math.min(text.length(), 50));
-				if (text.length() > 50) shortText += "…";
-				log.debug("Running recommender on " + text.length() + "b: " + shortText);
+			MauiWrapper wrapper = pool.borrow(deadline);
+			List<Topic> result;
+			try {
+				result = wrapper.extractTopicsFromText(text, maxTopics);
+			} finally {
+				pool.release(wrapper);
 			}
-			RecommendationResult result = new RecommendationResult(
-					getMauiWrapper().extractTopicsFromText(text, configuration.getMaxTopicsPerDocument()),
-					configuration.getProbabilityThreshold());
-			if (log.isDebugEnabled()) {
-				log.debug("Recommendation result: " + result);
+			ShadowEvaluation evaluation = shadow;
+			if (evaluation != null) {
+				evaluation.offer(text, maxTopics, result, getConfiguration().getShadowSampleRate());
 			}
 			return result;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			deadline.cancel();
+			throw new RequestCancelledException();
+		} catch (DeadlineExceededException | RequestCancelledException ex) {
+			throw ex;
 		} catch (Exception ex) {
 			log.error("Error running recommender", ex);
 			throw new MauiServerException("Error running recommender: " + ex.getMessage(), ex);
 		}
 	}
-
+	
 	public Vocabulary toMauiVocabulary(Model vocabulary) {
+		return toMauiVocabulary(vocabulary, getConfiguration());
+	}
+	
+	private Vocabulary toMauiVocabulary(Model vocabulary, TaggerConfiguration configuration) {
 		if (vocabulary == null) return null;
 		Vocabulary result = new Vocabulary();
-		result.setStemmer(getConfiguration().getStemmer());
-		result.setStopwords(getConfiguration().getStopwords());
-		result.setLanguage(getConfiguration().getEffectiveLang());
+		result.setStemmer(configuration.getStemmer());
+		result.setStopwords(configuration.getStopwords());
+		result.setLanguage(configuration.getEffectiveLang());
 		result.setVocabularyName(store.getVocabularyFile(id).getAbsolutePath());
 		try {
 			result.initializeFromModel(vocabulary);
@@ -158,17 +940,10 @@ public class Tagger {
 		return result;
 	}
 	
-	private MauiWrapper getMauiWrapper() {
-		if (mauiWrapper == null) {
-			if (!isTrained()) return null;
-			mauiWrapper = getMauiWrapper(getMauiModel());
-		}
-		return mauiWrapper;
-	}
-	
 	public MauiWrapper getMauiWrapper(MauiFilter forMauiModel) {
-		if (getVocabularyMaui() == null) return null;
-		forMauiModel.setVocabulary(getVocabularyMaui());
-		return new MauiWrapper(getVocabularyMaui(), forMauiModel);
+		Vocabulary vocabulary = getVocabularyMaui();
+		if (vocabulary == null) return null;
+		forMauiModel.setVocabulary(vocabulary);
+		return new MauiWrapper(vocabulary, forMauiModel);
 	}
 }
@@ -2,23 +2,58 @@ package org.topbraid.mauiserver.tagger;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.topbraid.mauiserver.MauiServerException;
 import org.topbraid.mauiserver.persistence.TaggerStore;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The taggers in the store. Each {@link Tagger} instance is created
+ * once, through a future that is shared by all threads asking for it
+ * at the same time, so that there is never more than one instance per
+ * tagger, and the expensive loading of its vocabulary and model happens
+ * once. Different taggers are created and loaded independently.
+ * <p>
+ * The vocabularies and models of loaded taggers share a memory budget.
+ * Whenever a tagger has been loaded and the budget is exceeded, the
+ * least recently used idle taggers are unloaded until it fits again.
+ * Taggers whose configuration pins them are never unloaded.
+ */
 public class TaggerCollection {
 	private final static Logger log = LoggerFactory.getLogger(TaggerCollection.class);
+	private final static Set<String> reservedTaggerIds = Set.of("classifier", "suggest");
 
 	private final String dataDir;
 	private final TaggerStore store;
-	private final Map<String, Tagger> cachedTaggers = new HashMap<String, Tagger>();
+	private final ConcurrentMap<String, Future<Tagger>> cachedTaggers = new ConcurrentHashMap<String, Future<Tagger>>();
+	private final long memoryBudgetBytes;
+	private final Object evictionLock = new Object();
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
 
 	public TaggerCollection(String dataDir) {
+		this(dataDir, 0);
+	}
+
+	/**
+	 * @param memoryBudgetBytes Memory budget for loaded taggers; 0 for no limit
+	 */
+	public TaggerCollection(String dataDir, long memoryBudgetBytes) {
 		this.dataDir = dataDir;
+		this.memoryBudgetBytes = memoryBudgetBytes;
 		store = new TaggerStore(dataDir);
 	}
 
@@ -39,24 +74,121 @@ public class TaggerCollection {
 	}
 	
 	public Tagger getTagger(String id) {
-		if (taggerExists(id)) {
-			if (!cachedTaggers.containsKey(id)) {
+		if (!taggerExists(id)) {
+			if (id != null) {
+				cachedTaggers.remove(id);
+			}
+			return null;
+		}
+		Future<Tagger> future = cachedTaggers.get(id);
+		if (future == null) {
+			FutureTask<Tagger> task = new FutureTask<Tagger>(() -> {
 				Tagger tagger = Tagger.create(id, store);
 				if (tagger != null) {
-					cachedTaggers.put(id, tagger);
+					tagger.setLoadListener(this::onTaggerLoaded);
 				}
+				return tagger;
+			});
+			future = cachedTaggers.putIfAbsent(id, task);
+			if (future == null) {
+				future = task;
+				task.run();
+			}
+		}
+		try {
+			Tagger tagger = future.get();
+			if (tagger == null) {
+				// Try again next time
+				cachedTaggers.remove(id, future);
 			}
-		} else {
-			cachedTaggers.remove(id);
+			return tagger;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new MauiServerException("Interrupted while waiting for tagger " + id, ex);
+		} catch (ExecutionException ex) {
+			cachedTaggers.remove(id, future);
+			throw new MauiServerException("Failed to create tagger " + id + ": " + ex.getCause().getMessage(), ex.getCause());
 		}
-		return cachedTaggers.get(id);
 	}
 	
+	/**
+	 * @return The taggers that have been created so far, without waiting for any that are being created
+	 */
+	private List<Tagger> getCreatedTaggers() {
+		List<Tagger> results = new ArrayList<Tagger>();
+		for (Future<Tagger> future: cachedTaggers.values()) {
+			if (!future.isDone()) continue;
+			try {
+				Tagger tagger = future.get();
+				if (tagger != null) {
+					results.add(tagger);
+				}
+			} catch (InterruptedException | ExecutionException ex) {
+				// Failed creation; getTagger() takes care of it
+			}
+		}
+		return results;
+	}
+
+	private void onTaggerLoaded(Tagger loaded) {
+		loadCount.incrementAndGet();
+		enforceMemoryBudget(loaded);
+	}
+
+	/**
+	 * Unloads least recently used taggers until the estimated memory use
+	 * of all loaded taggers is within the budget. Taggers that are pinned,
+	 * not idle, or the one given, are left alone.
+	 */
+	void enforceMemoryBudget(Tagger keep) {
+		if (memoryBudgetBytes <= 0) return;
+		synchronized (evictionLock) {
+			List<Tagger> loaded = getCreatedTaggers();
+			long used = 0;
+			for (Tagger tagger: loaded) {
+				used += tagger.getEstimatedBytes();
+			}
+			if (used <= memoryBudgetBytes) return;
+			loaded.sort(Comparator.comparingLong(Tagger::getLastAccessMillis));
+			for (Tagger tagger: loaded) {
+				if (used <= memoryBudgetBytes) break;
+				if (tagger == keep || tagger.getEstimatedBytes() == 0) continue;
+				if (tagger.getConfiguration().isPinned() || !tagger.isIdle()) continue;
+				long bytes = tagger.getEstimatedBytes();
+				if (tagger.unload()) {
+					used -= bytes;
+					evictionCount.incrementAndGet();
+				}
+			}
+			if (used > memoryBudgetBytes) {
+				log.warn("Loaded taggers use an estimated " + used + " bytes, over the budget of " +
+						memoryBudgetBytes + " bytes, but none can be unloaded");
+			}
+		}
+	}
+
+	public ObjectNode getMemoryJSON() {
+		long used = 0;
+		int loadedTaggers = 0;
+		for (Tagger tagger: getCreatedTaggers()) {
+			if (!tagger.getSnapshotIfLoaded().isLoaded()) continue;
+			used += tagger.getEstimatedBytes();
+			loadedTaggers++;
+		}
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("budget_bytes", memoryBudgetBytes);
+		result.put("estimated_bytes", used);
+		result.put("loaded_taggers", loadedTaggers);
+		result.put("loads", loadCount.get());
+		result.put("evictions", evictionCount.get());
+		return result;
+	}
+
 	public boolean taggerExists(String id) {
 		return isValidTaggerId(id) && store.taggerExists(id);
 	}
 	
-	public Tagger createTagger(String id) {
+	public synchronized Tagger createTagger(String id) {
 		if (!isValidTaggerId(id)) {
 			throw new MauiServerException("Malformed tagger id: '" + id + "'");
 		}
@@ -67,12 +199,18 @@ public class TaggerCollection {
 		return getTagger(id);
 	}
 	
-	public void deleteTagger(String id) {
+	public synchronized void deleteTagger(String id) {
 		if (!store.taggerExists(id)) {
 			throw new MauiServerException("Tagger does not exist: '" + id + "'");
 		}
+		Tagger tagger = cachedTaggers.containsKey(id) ? getTagger(id) : null;
+		if (tagger != null) {
+			// Stops the shadow evaluation
+			tagger.discardCandidate();
+		}
 		store.deleteTagger(id);
 		cachedTaggers.remove(id);
+		RecommendationCache.get().invalidate(id);
 	}
 	
 	public boolean isValidTaggerId(String id) {
@@ -83,6 +221,16 @@ public class TaggerCollection {
 		// so we disallow them
 		if (id.contains("/")) return false;
 		if (id.contains("\\")) return false;
+		if (isReservedTaggerId(id)) return false;
 		return true;
 	}
+	
+	/**
+	 * IDs that can't be used for taggers because their URLs are taken by
+	 * server-wide resources, such as the classifier and the multi-tagger
+	 * suggestion service
+	 */
+	public static boolean isReservedTaggerId(String id) {
+		return reservedTaggerIds.contains(id);
+	}
 }
@@ -1,7 +1,9 @@
 package org.topbraid.mauiserver.tagger;
 
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.topbraid.mauiserver.MauiServer;
 import org.topbraid.mauiserver.MauiServerException;
@@ -17,6 +19,7 @@ import com.entopix.maui.stopwords.StopwordsFrench;
 import com.entopix.maui.stopwords.StopwordsGerman;
 import com.entopix.maui.stopwords.StopwordsSpanish;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
@@ -31,6 +34,31 @@ public class TaggerConfiguration {
 	private int crossValidationPasses = 10;
 	private int maxTopicsPerDocument = 10;
 	private double probabilityThreshold = 0.0;
+	private Integer wrapperPoolSize = null;
+	private Integer maxTextLength = null;
+	private TextBudget.Unit maxTextLengthUnit = TextBudget.Unit.CHARS;
+	private TextBudget.Strategy truncationStrategy = TextBudget.Strategy.HEAD;
+	private boolean shadowEvaluation = false;
+	private double shadowSampleRate = 0.1;
+	private int shadowMinSamples = 100;
+	private boolean shadowAutoPromote = false;
+	private double shadowMaxP99Ratio = 1.25;
+	private boolean compileClassifier = false;
+	private boolean compactModel = true;
+	private FeatureProfile.Name featureProfile = FeatureProfile.Name.FULL;
+	private Set<FeatureProfile.Feature> features = null;
+	private Integer minNumOccur = null;
+	private Integer minPhraseLength = null;
+	private Integer maxPhraseLength = null;
+	private int warmupMaxMillis = 30000;
+	private Integer suggestTimeoutMillis = null;
+	private boolean adaptiveConcurrency = false;
+	private int maxConcurrency = 100;
+	private Integer bulkheadMaxInFlight = null;
+	private Integer bulkheadMaxQueued = null;
+	private double bulkheadInteractiveShare = 0.25;
+	private int bulkheadInteractiveWeight = 4;
+	private boolean pinned = false;
 	
 	private final static String fieldId = "id";
 	private final static String fieldTitle = "title";
@@ -41,6 +69,31 @@ public class TaggerConfiguration {
 	private final static String fieldCrossValidationPasses = "cross_validation_passes";
 	private final static String fieldMaxTopicsPerDocument = "max_topics_per_document";
 	private final static String fieldProbabilityThreshold = "probability_threshold";
+	private final static String fieldWrapperPoolSize = "wrapper_pool_size";
+	private final static String fieldMaxTextLength = "max_text_length";
+	private final static String fieldMaxTextLengthUnit = "max_text_length_unit";
+	private final static String fieldTruncationStrategy = "truncation_strategy";
+	private final static String fieldShadowEvaluation = "shadow_evaluation";
+	private final static String fieldShadowSampleRate = "shadow_sample_rate";
+	private final static String fieldShadowMinSamples = "shadow_min_samples";
+	private final static String fieldShadowAutoPromote = "shadow_auto_promote";
+	private final static String fieldShadowMaxP99Ratio = "shadow_max_p99_ratio";
+	private final static String fieldCompileClassifier = "compile_classifier";
+	private final static String fieldCompactModel = "compact_model";
+	private final static String fieldFeatureProfile = "feature_profile";
+	private final static String fieldFeatures = "features";
+	private final static String fieldMinNumOccur = "min_num_occur";
+	private final static String fieldMinPhraseLength = "min_phrase_length";
+	private final static String fieldMaxPhraseLength = "max_phrase_length";
+	private final static String fieldWarmupMaxMillis = "warmup_max_millis";
+	private final static String fieldSuggestTimeoutMillis = "suggest_timeout_millis";
+	private final static String fieldAdaptiveConcurrency = "adaptive_concurrency";
+	private final static String fieldMaxConcurrency = "max_concurrency";
+	private final static String fieldBulkheadMaxInFlight = "bulkhead_max_in_flight";
+	private final static String fieldBulkheadMaxQueued = "bulkhead_max_queued";
+	private final static String fieldBulkheadInteractiveShare = "bulkhead_interactive_share";
+	private final static String fieldBulkheadInteractiveWeight = "bulkhead_interactive_weight";
+	private final static String fieldPinned = "pinned";
 	
 	@SuppressWarnings("serial")
 	private final static Map<String,Class<? extends Stemmer>> stemmerRegistry = new HashMap<String,Class<? extends Stemmer>>() {{
@@ -94,29 +147,6 @@ public class TaggerConfiguration {
 		return lang != null ? lang : defaultLang;
 	}
 
-	@SuppressWarnings("unchecked")
-	private <T> Class<? extends T> getClass(Class<T> superclass, String className) {
-		try {
-			Class<?> result = Class.forName(className);
-			if (!superclass.isAssignableFrom(result)) {
-				throw new MauiServerException("Class " + className + " does not implement/extend " + superclass.getCanonicalName());
-			}
-			return (Class<? extends T>) result;
-		} catch (ClassNotFoundException ex) {
-			throw new MauiServerException(ex);
-		}
-	}
-	
-	private <T> T instantiate(Class<T> class_) {
-		try {
-			return class_.newInstance();
-		} catch (InstantiationException ex) {
-			throw new MauiServerException(ex);
-		} catch (IllegalAccessException ex) {
-			throw new MauiServerException(ex);
-		}
-	}
-	
 	public String getStemmerClass() {
 		return stemmerClass;
 	}
@@ -125,18 +155,21 @@ public class TaggerConfiguration {
 		this.stemmerClass = className;
 	}
 
-	private Class<? extends Stemmer> getEffectiveStemmerClass() {
+	private String getEffectiveStemmerClass() {
 		if (stemmerClass != null) {
-			return getClass(Stemmer.class, stemmerClass);
+			return stemmerClass;
 		}
 		if (!stemmerRegistry.containsKey(getEffectiveLang())) {
 			throw new MauiServerException("No stemmer class registered for language '" + getEffectiveLang() + "'");
 		}
-		return stemmerRegistry.get(getEffectiveLang());
+		return stemmerRegistry.get(getEffectiveLang()).getName();
 	}
 
-	public Stemmer getStemmer() throws MauiServerException {
-		return instantiate(getEffectiveStemmerClass());
+	/**
+	 * @return A shared, thread-safe instance
+	 */
+	public CachingStemmer getStemmer() throws MauiServerException {
+		return LanguageProcessors.getStemmer(getEffectiveStemmerClass());
 	}
 	
 	public String getStopwordsClass() {
@@ -147,18 +180,21 @@ public class TaggerConfiguration {
 		this.stopwordsClass = className;
 	}
 	
-	private Class<? extends Stopwords> getEffectiveStopwordsClass() {
+	private String getEffectiveStopwordsClass() {
 		if (stopwordsClass != null) {
-			return getClass(Stopwords.class, stopwordsClass);
+			return stopwordsClass;
 		}
 		if (!stopwordsRegistry.containsKey(getEffectiveLang())) {
 			throw new MauiServerException("No stopwords class registered for language '" + getEffectiveLang() + "'");
 		}
-		return stopwordsRegistry.get(getEffectiveLang());
+		return stopwordsRegistry.get(getEffectiveLang()).getName();
 	}
 
+	/**
+	 * @return A shared instance
+	 */
 	public Stopwords getStopwords() throws MauiServerException {
-		return instantiate(getEffectiveStopwordsClass());
+		return LanguageProcessors.getStopwords(getEffectiveStopwordsClass());
 	}
 	
 	public int getCrossValidationPasses() {
@@ -197,6 +233,323 @@ public class TaggerConfiguration {
 		probabilityThreshold = number;
 	}
 	
+	public Integer getWrapperPoolSize() {
+		return wrapperPoolSize;
+	}
+	
+	public void setWrapperPoolSize(Integer number) {
+		if (number != null && number < 1) {
+			throw new IllegalArgumentException(fieldWrapperPoolSize + " must be at least 1");
+		}
+		wrapperPoolSize = number;
+	}
+	
+	/**
+	 * The number of Maui instances that can serve suggestions concurrently;
+	 * defaults to the number of available processor cores.
+	 */
+	public int getEffectiveWrapperPoolSize() {
+		return wrapperPoolSize != null ? wrapperPoolSize : Runtime.getRuntime().availableProcessors();
+	}
+	
+	public Integer getMaxTextLength() {
+		return maxTextLength;
+	}
+	
+	public void setMaxTextLength(Integer length) {
+		if (length != null && length < 1) {
+			throw new IllegalArgumentException(fieldMaxTextLength + " must be at least 1");
+		}
+		maxTextLength = length;
+	}
+	
+	public TextBudget.Unit getMaxTextLengthUnit() {
+		return maxTextLengthUnit;
+	}
+	
+	public void setMaxTextLengthUnit(TextBudget.Unit unit) {
+		maxTextLengthUnit = unit == null ? TextBudget.Unit.CHARS : unit;
+	}
+	
+	public TextBudget.Strategy getTruncationStrategy() {
+		return truncationStrategy;
+	}
+	
+	public void setTruncationStrategy(TextBudget.Strategy strategy) {
+		truncationStrategy = strategy == null ? TextBudget.Strategy.HEAD : strategy;
+	}
+	
+	/**
+	 * @return The budget that limits the text passed to Maui, or <code>null</code> if texts are not limited
+	 */
+	public TextBudget getTextBudget() {
+		if (maxTextLength == null) return null;
+		return new TextBudget(maxTextLength, maxTextLengthUnit, truncationStrategy);
+	}
+	
+	/**
+	 * Whether newly trained models are evaluated on live traffic before they replace the current model
+	 */
+	public boolean isShadowEvaluation() {
+		return shadowEvaluation;
+	}
+	
+	public void setShadowEvaluation(boolean enabled) {
+		shadowEvaluation = enabled;
+	}
+	
+	public double getShadowSampleRate() {
+		return shadowSampleRate;
+	}
+	
+	public void setShadowSampleRate(double rate) {
+		if (rate < 0.0 || rate > 1.0) {
+			throw new IllegalArgumentException(fieldShadowSampleRate + " must be between 0 and 1");
+		}
+		shadowSampleRate = rate;
+	}
+	
+	public int getShadowMinSamples() {
+		return shadowMinSamples;
+	}
+	
+	public void setShadowMinSamples(int number) {
+		if (number < 1) {
+			throw new IllegalArgumentException(fieldShadowMinSamples + " must be at least 1");
+		}
+		shadowMinSamples = number;
+	}
+	
+	public boolean isShadowAutoPromote() {
+		return shadowAutoPromote;
+	}
+	
+	public void setShadowAutoPromote(boolean enabled) {
+		shadowAutoPromote = enabled;
+	}
+	
+	public double getShadowMaxP99Ratio() {
+		return shadowMaxP99Ratio;
+	}
+	
+	public void setShadowMaxP99Ratio(double ratio) {
+		if (ratio <= 0.0) {
+			throw new IllegalArgumentException(fieldShadowMaxP99Ratio + " must be positive");
+		}
+		shadowMaxP99Ratio = ratio;
+	}
+	
+	/**
+	 * Whether the classifier of newly trained models is compiled into a faster form
+	 */
+	public boolean isCompileClassifier() {
+		return compileClassifier;
+	}
+	
+	public void setCompileClassifier(boolean enabled) {
+		compileClassifier = enabled;
+	}
+	
+	/**
+	 * Whether newly trained models are compacted before they are stored
+	 */
+	public boolean isCompactModel() {
+		return compactModel;
+	}
+	
+	public void setCompactModel(boolean enabled) {
+		compactModel = enabled;
+	}
+	
+	public FeatureProfile.Name getFeatureProfile() {
+		return featureProfile;
+	}
+	
+	public void setFeatureProfile(FeatureProfile.Name name) {
+		featureProfile = name == null ? FeatureProfile.Name.FULL : name;
+	}
+	
+	/**
+	 * @return The features models are trained with, or <code>null</code> to use those of the feature profile
+	 */
+	public Set<FeatureProfile.Feature> getFeatures() {
+		return features;
+	}
+	
+	public void setFeatures(Set<FeatureProfile.Feature> features) {
+		this.features = features;
+	}
+	
+	public Integer getMinNumOccur() {
+		return minNumOccur;
+	}
+	
+	public void setMinNumOccur(Integer number) {
+		if (number != null && number < 1) {
+			throw new IllegalArgumentException(fieldMinNumOccur + " must be at least 1");
+		}
+		minNumOccur = number;
+	}
+	
+	public Integer getMinPhraseLength() {
+		return minPhraseLength;
+	}
+	
+	public void setMinPhraseLength(Integer length) {
+		if (length != null && length < 1) {
+			throw new IllegalArgumentException(fieldMinPhraseLength + " must be at least 1");
+		}
+		minPhraseLength = length;
+	}
+	
+	public Integer getMaxPhraseLength() {
+		return maxPhraseLength;
+	}
+	
+	public void setMaxPhraseLength(Integer length) {
+		if (length != null && length < 1) {
+			throw new IllegalArgumentException(fieldMaxPhraseLength + " must be at least 1");
+		}
+		maxPhraseLength = length;
+	}
+	
+	/**
+	 * The named feature profile, with any explicitly configured
+	 * features and candidate settings applied on top.
+	 */
+	public FeatureProfile getEffectiveFeatureProfile() {
+		return FeatureProfile.get(featureProfile).override(features, minNumOccur, minPhraseLength, maxPhraseLength);
+	}
+	
+	/**
+	 * Time limit for warming up a newly loaded model before it serves
+	 * suggestions; 0 if models are not warmed up
+	 */
+	public int getWarmupMaxMillis() {
+		return warmupMaxMillis;
+	}
+	
+	public void setWarmupMaxMillis(int millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException(fieldWarmupMaxMillis + " must not be negative");
+		}
+		warmupMaxMillis = millis;
+	}
+	
+	/**
+	 * @return Time after which the work for a suggest request is abandoned, unless the request specifies its own; <code>null</code> for no limit
+	 */
+	public Integer getSuggestTimeoutMillis() {
+		return suggestTimeoutMillis;
+	}
+	
+	public void setSuggestTimeoutMillis(Integer millis) {
+		if (millis != null && millis < 1) {
+			throw new IllegalArgumentException(fieldSuggestTimeoutMillis + " must be at least 1");
+		}
+		suggestTimeoutMillis = millis;
+	}
+	
+	/**
+	 * Whether the number of concurrent suggest requests is limited, with a limit that adapts to latency
+	 */
+	public boolean isAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+	
+	public void setAdaptiveConcurrency(boolean enabled) {
+		adaptiveConcurrency = enabled;
+	}
+	
+	/**
+	 * Upper bound for the adaptive concurrency limit
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+	
+	public void setMaxConcurrency(int number) {
+		if (number < 1) {
+			throw new IllegalArgumentException(fieldMaxConcurrency + " must be at least 1");
+		}
+		maxConcurrency = number;
+	}
+	
+	/**
+	 * @return Maximum number of suggest requests processed at the same time, or <code>null</code> for the server-wide default
+	 */
+	public Integer getBulkheadMaxInFlight() {
+		return bulkheadMaxInFlight;
+	}
+	
+	public void setBulkheadMaxInFlight(Integer number) {
+		if (number != null && number < 1) {
+			throw new IllegalArgumentException(fieldBulkheadMaxInFlight + " must be at least 1");
+		}
+		bulkheadMaxInFlight = number;
+	}
+	
+	public int getEffectiveBulkheadMaxInFlight() {
+		return bulkheadMaxInFlight != null ? bulkheadMaxInFlight : MauiServer.getBulkheadMaxInFlight();
+	}
+	
+	/**
+	 * @return Maximum number of suggest requests waiting for their turn, or <code>null</code> for the server-wide default
+	 */
+	public Integer getBulkheadMaxQueued() {
+		return bulkheadMaxQueued;
+	}
+	
+	public void setBulkheadMaxQueued(Integer number) {
+		if (number != null && number < 0) {
+			throw new IllegalArgumentException(fieldBulkheadMaxQueued + " must not be negative");
+		}
+		bulkheadMaxQueued = number;
+	}
+	
+	public int getEffectiveBulkheadMaxQueued() {
+		return bulkheadMaxQueued != null ? bulkheadMaxQueued : MauiServer.getBulkheadMaxQueued();
+	}
+	
+	/**
+	 * Share of the bulkhead's in-flight places reserved for interactive requests
+	 */
+	public double getBulkheadInteractiveShare() {
+		return bulkheadInteractiveShare;
+	}
+	
+	public void setBulkheadInteractiveShare(double share) {
+		if (share < 0 || share > 1) {
+			throw new IllegalArgumentException(fieldBulkheadInteractiveShare + " must be between 0 and 1");
+		}
+		bulkheadInteractiveShare = share;
+	}
+	
+	/**
+	 * Turns given to waiting interactive requests for each turn of a waiting bulk request
+	 */
+	public int getBulkheadInteractiveWeight() {
+		return bulkheadInteractiveWeight;
+	}
+	
+	public void setBulkheadInteractiveWeight(int weight) {
+		if (weight < 1) {
+			throw new IllegalArgumentException(fieldBulkheadInteractiveWeight + " must be at least 1");
+		}
+		bulkheadInteractiveWeight = weight;
+	}
+	
+	/**
+	 * Whether vocabulary and model stay loaded even if the memory budget for taggers is exceeded
+	 */
+	public boolean isPinned() {
+		return pinned;
+	}
+	
+	public void setPinned(boolean pinned) {
+		this.pinned = pinned;
+	}
+	
 	public ObjectNode toJSON() {
 		ObjectNode result = JsonNodeFactory.instance.objectNode();
 		result.put(fieldId, id);
@@ -208,6 +561,38 @@ public class TaggerConfiguration {
 		result.put(fieldCrossValidationPasses, crossValidationPasses);
 		result.put(fieldMaxTopicsPerDocument, maxTopicsPerDocument);
 		result.put(fieldProbabilityThreshold, probabilityThreshold);
+		result.put(fieldWrapperPoolSize, wrapperPoolSize);
+		result.put(fieldMaxTextLength, maxTextLength);
+		result.put(fieldMaxTextLengthUnit, EnumNames.toString(maxTextLengthUnit));
+		result.put(fieldTruncationStrategy, EnumNames.toString(truncationStrategy));
+		result.put(fieldShadowEvaluation, shadowEvaluation);
+		result.put(fieldShadowSampleRate, shadowSampleRate);
+		result.put(fieldShadowMinSamples, shadowMinSamples);
+		result.put(fieldShadowAutoPromote, shadowAutoPromote);
+		result.put(fieldShadowMaxP99Ratio, shadowMaxP99Ratio);
+		result.put(fieldCompileClassifier, compileClassifier);
+		result.put(fieldCompactModel, compactModel);
+		result.put(fieldFeatureProfile, EnumNames.toString(featureProfile));
+		if (features == null) {
+			result.putNull(fieldFeatures);
+		} else {
+			ArrayNode array = result.putArray(fieldFeatures);
+			for (FeatureProfile.Feature feature: features) {
+				array.add(EnumNames.toString(feature));
+			}
+		}
+		result.put(fieldMinNumOccur, minNumOccur);
+		result.put(fieldMinPhraseLength, minPhraseLength);
+		result.put(fieldMaxPhraseLength, maxPhraseLength);
+		result.put(fieldWarmupMaxMillis, warmupMaxMillis);
+		result.put(fieldSuggestTimeoutMillis, suggestTimeoutMillis);
+		result.put(fieldAdaptiveConcurrency, adaptiveConcurrency);
+		result.put(fieldMaxConcurrency, maxConcurrency);
+		result.put(fieldBulkheadMaxInFlight, bulkheadMaxInFlight);
+		result.put(fieldBulkheadMaxQueued, bulkheadMaxQueued);
+		result.put(fieldBulkheadInteractiveShare, bulkheadInteractiveShare);
+		result.put(fieldBulkheadInteractiveWeight, bulkheadInteractiveWeight);
+		result.put(fieldPinned, pinned);
 		return result;
 	}
 
@@ -223,6 +608,48 @@ public class TaggerConfiguration {
 		if (config.has(fieldCrossValidationPasses)) setCrossValidationPasses(config.get(fieldCrossValidationPasses).asInt());
 		if (config.has(fieldMaxTopicsPerDocument)) setMaxTopicsPerDocument(config.get(fieldMaxTopicsPerDocument).asInt());
 		if (config.has(fieldProbabilityThreshold)) setProbabilityThreshold(config.get(fieldProbabilityThreshold).asDouble());
+		if (config.has(fieldWrapperPoolSize)) setWrapperPoolSize(asInteger(config.get(fieldWrapperPoolSize)));
+		if (config.has(fieldMaxTextLength)) setMaxTextLength(asInteger(config.get(fieldMaxTextLength)));
+		if (config.has(fieldMaxTextLengthUnit)) setMaxTextLengthUnit(TextBudget.Unit.fromString(config.get(fieldMaxTextLengthUnit).textValue()));
+		if (config.has(fieldShadowEvaluation)) setShadowEvaluation(config.get(fieldShadowEvaluation).asBoolean());
+		if (config.has(fieldShadowSampleRate)) setShadowSampleRate(config.get(fieldShadowSampleRate).asDouble());
+		if (config.has(fieldShadowMinSamples)) setShadowMinSamples(config.get(fieldShadowMinSamples).asInt());
+		if (config.has(fieldShadowAutoPromote)) setShadowAutoPromote(config.get(fieldShadowAutoPromote).asBoolean());
+		if (config.has(fieldShadowMaxP99Ratio)) setShadowMaxP99Ratio(config.get(fieldShadowMaxP99Ratio).asDouble());
+		if (config.has(fieldCompileClassifier)) setCompileClassifier(config.get(fieldCompileClassifier).asBoolean());
+		if (config.has(fieldCompactModel)) setCompactModel(config.get(fieldCompactModel).asBoolean());
+		if (config.has(fieldFeatureProfile)) setFeatureProfile(FeatureProfile.Name.fromString(config.get(fieldFeatureProfile).textValue()));
+		if (config.has(fieldFeatures)) setFeatures(asFeatures(config.get(fieldFeatures)));
+		if (config.has(fieldMinNumOccur)) setMinNumOccur(asInteger(config.get(fieldMinNumOccur)));
+		if (config.has(fieldMinPhraseLength)) setMinPhraseLength(asInteger(config.get(fieldMinPhraseLength)));
+		if (config.has(fieldMaxPhraseLength)) setMaxPhraseLength(asInteger(config.get(fieldMaxPhraseLength)));
+		if (config.has(fieldWarmupMaxMillis)) setWarmupMaxMillis(config.get(fieldWarmupMaxMillis).asInt());
+		if (config.has(fieldSuggestTimeoutMillis)) setSuggestTimeoutMillis(asInteger(config.get(fieldSuggestTimeoutMillis)));
+		if (config.has(fieldAdaptiveConcurrency)) setAdaptiveConcurrency(config.get(fieldAdaptiveConcurrency).asBoolean());
+		if (config.has(fieldMaxConcurrency)) setMaxConcurrency(config.get(fieldMaxConcurrency).asInt());
+		if (config.has(fieldBulkheadMaxInFlight)) setBulkheadMaxInFlight(asInteger(config.get(fieldBulkheadMaxInFlight)));
+		if (config.has(fieldBulkheadMaxQueued)) setBulkheadMaxQueued(asInteger(config.get(fieldBulkheadMaxQueued)));
+		if (config.has(fieldBulkheadInteractiveShare)) setBulkheadInteractiveShare(config.get(fieldBulkheadInteractiveShare).asDouble());
+		if (config.has(fieldBulkheadInteractiveWeight)) setBulkheadInteractiveWeight(config.get(fieldBulkheadInteractiveWeight).asInt());
+		if (config.has(fieldPinned)) setPinned(config.get(fieldPinned).asBoolean());
+		if (config.has(fieldTruncationStrategy)) setTruncationStrategy(TextBudget.Strategy.fromString(config.get(fieldTruncationStrategy).textValue()));
+	}
+
+	private static Integer asInteger(JsonNode value) {
+		if (value.isNull() || "".equals(value.asText())) return null;
+		return value.asInt();
+	}
+
+	private static Set<FeatureProfile.Feature> asFeatures(JsonNode value) {
+		if (value.isNull()) return null;
+		if (!value.isArray()) {
+			throw new MauiServerException("'" + fieldFeatures + "' must be an array of feature names or null");
+		}
+		Set<FeatureProfile.Feature> result = EnumSet.noneOf(FeatureProfile.Feature.class);
+		for (JsonNode name: value) {
+			result.add(FeatureProfile.Feature.fromString(name.asText()));
+		}
+		return result;
 	}
 
 	public static TaggerConfiguration fromJSON(JsonNode config, String defaultId, boolean ignoreIdInConfig) {
@@ -240,6 +667,16 @@ public class TaggerConfiguration {
 		return result;
 	}
 	
+	/**
+	 * Returns a copy that can be modified without affecting a tagger
+	 * that uses this configuration.
+	 */
+	public TaggerConfiguration copy() {
+		TaggerConfiguration result = new TaggerConfiguration(id);
+		result.updateFromJSON(toJSON());
+		return result;
+	}
+	
 	public static TaggerConfiguration createWithDefaults(String taggerId) {
 		TaggerConfiguration result = new TaggerConfiguration(taggerId);
 		result.setTitle(taggerId);
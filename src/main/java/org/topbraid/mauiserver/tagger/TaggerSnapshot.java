@@ -0,0 +1,148 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import com.entopix.maui.vocab.Vocabulary;
+
+/**
+ * An immutable snapshot of everything a {@link Tagger} needs to serve
+ * suggestions: configuration, Maui vocabulary, and a pool of Maui
+ * instances for the model. The tagger publishes a new snapshot whenever
+ * any of these change. A request that holds on to a snapshot therefore
+ * sees a consistent combination of them, even if the tagger is
+ * re-configured or re-trained while the request is in progress.
+ */
+public class TaggerSnapshot {
+	private final long generation;
+	private final TaggerConfiguration configuration;
+	private final Vocabulary vocabulary;
+	private final MauiWrapperPool wrapperPool;
+	private final boolean loaded;
+	private volatile PhraseDictionary dictionary;	// lazy loading
+
+	/**
+	 * A snapshot that has only the configuration, with vocabulary and
+	 * model yet to be loaded from the store.
+	 */
+	TaggerSnapshot(TaggerConfiguration configuration) {
+		this(0, configuration, null, null, false);
+	}
+
+	TaggerSnapshot(long generation, TaggerConfiguration configuration,
+			Vocabulary vocabulary, MauiWrapperPool wrapperPool, boolean loaded) {
+		this(generation, configuration, vocabulary, wrapperPool, null, loaded, null);
+	}
+
+	private TaggerSnapshot(long generation, TaggerConfiguration configuration, Vocabulary vocabulary,
+			MauiWrapperPool wrapperPool, PhraseDictionary dictionary, boolean loaded, TaggerSnapshot previous) {
+		this.generation = generation;
+		this.configuration = configuration;
+		this.vocabulary = vocabulary;
+		this.wrapperPool = wrapperPool;
+		this.loaded = loaded;
+		if (dictionary == null && previous != null && previous.vocabulary == vocabulary && vocabulary != null
+				&& hasSameDictionarySettings(previous.configuration, configuration)) {
+			this.dictionary = previous.dictionary;
+		} else {
+			this.dictionary = dictionary;
+		}
+	}
+
+	/**
+	 * This snapshot with vocabulary and model loaded from the store,
+	 * with the same generation.
+	 *
+	 * @param dictionary The label dictionary, or <code>null</code> to build it on first use
+	 */
+	TaggerSnapshot toLoaded(Vocabulary vocabulary, MauiWrapperPool wrapperPool, PhraseDictionary dictionary) {
+		return new TaggerSnapshot(generation, configuration, vocabulary, wrapperPool, dictionary, true, null);
+	}
+
+	/**
+	 * The loaded snapshot that replaces this one, with the next generation.
+	 * State that depends only on an unchanged part of this snapshot, that
+	 * is, the label dictionary of the same vocabulary, language, stemmer
+	 * and stopwords, is carried over.
+	 *
+	 * @param dictionary The label dictionary of the new vocabulary, or
+	 *        <code>null</code> to carry it over if possible, or else build it on first use
+	 */
+	TaggerSnapshot next(TaggerConfiguration configuration, Vocabulary vocabulary,
+			MauiWrapperPool wrapperPool, PhraseDictionary dictionary) {
+		return new TaggerSnapshot(generation + 1, configuration, vocabulary, wrapperPool, dictionary, true, this);
+	}
+
+	private static boolean hasSameDictionarySettings(TaggerConfiguration a, TaggerConfiguration b) {
+		return Objects.equals(a.getEffectiveLang(), b.getEffectiveLang())
+				&& Objects.equals(a.getStemmerClass(), b.getStemmerClass())
+				&& Objects.equals(a.getStopwordsClass(), b.getStopwordsClass());
+	}
+
+	/**
+	 * A number that increases whenever the tagger's configuration,
+	 * vocabulary or model change. Results computed from snapshots with
+	 * the same generation are interchangeable.
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * The configuration. Must not be modified; see {@link TaggerConfiguration#copy()}.
+	 */
+	public TaggerConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * @return The Maui vocabulary, or <code>null</code> if the tagger has none or it has not been loaded
+	 */
+	public Vocabulary getVocabulary() {
+		return vocabulary;
+	}
+
+	/**
+	 * @return The pool of Maui instances, or <code>null</code> if the tagger is not ready for suggestions or has not been loaded
+	 */
+	public MauiWrapperPool getWrapperPool() {
+		return wrapperPool;
+	}
+
+	/**
+	 * Whether the vocabulary and model have been loaded from the store.
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	public boolean canSuggest() {
+		return wrapperPool != null;
+	}
+
+	/**
+	 * The dictionary for matching concept labels in texts. It is derived
+	 * from the vocabulary. Most taggers never need it, so unless the tagger
+	 * built it when loading the vocabulary, or it was carried over from the
+	 * previous snapshot, it is built on first use.
+	 *
+	 * @param builder Builds the dictionary; called at most once
+	 */
+	PhraseDictionary getDictionary(Supplier<PhraseDictionary> builder) {
+		PhraseDictionary result = dictionary;
+		if (result != null) return result;
+		synchronized (this) {
+			if (dictionary == null) {
+				dictionary = builder.get();
+			}
+			return dictionary;
+		}
+	}
+
+	/**
+	 * @return The dictionary, or <code>null</code> if it has not been built
+	 */
+	PhraseDictionary getDictionaryIfBuilt() {
+		return dictionary;
+	}
+}
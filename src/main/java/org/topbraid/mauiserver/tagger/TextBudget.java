@@ -0,0 +1,221 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces a text to a maximum length before it is passed to Maui,
+ * so that the cost of tag suggestion is bounded regardless of
+ * document size. The length is measured in characters or in
+ * whitespace-separated tokens. Texts within the budget are left
+ * untouched. Longer texts are reduced to their beginning
+ * ({@link Strategy#HEAD}), their beginning and end
+ * ({@link Strategy#HEAD_TAIL}), or evenly spaced paragraphs from
+ * throughout the text ({@link Strategy#SAMPLE}). The separators
+ * inserted between the pieces count against the budget.
+ */
+public class TextBudget {
+
+	public enum Unit {
+		CHARS, TOKENS;
+
+		public static Unit fromString(String name) {
+			return EnumNames.fromString(Unit.class, name);
+		}
+	}
+
+	public enum Strategy {
+		HEAD, HEAD_TAIL, SAMPLE;
+
+		public static Strategy fromString(String name) {
+			return EnumNames.fromString(Strategy.class, name);
+		}
+	}
+
+	private final static Pattern paragraphBreak = Pattern.compile("\\n\\s*\\n");
+	private final static Pattern lineBreak = Pattern.compile("\\n");
+	private final static String separator = "\n\n";
+
+	private final int limit;
+	private final Unit unit;
+	private final Strategy strategy;
+
+	public TextBudget(int limit, Unit unit, Strategy strategy) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Text budget must be at least 1");
+		}
+		this.limit = limit;
+		this.unit = unit;
+		this.strategy = strategy;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public Unit getUnit() {
+		return unit;
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @return The text reduced to the budget, or the very same string if it is within the budget
+	 */
+	public String apply(String text) {
+		if (size(text, 0, text.length()) <= limit) return text;
+		switch (strategy) {
+		case HEAD_TAIL:
+			return headAndTail(text);
+		case SAMPLE:
+			return sample(text);
+		default:
+			return text.substring(0, headEnd(text, 0, text.length(), limit));
+		}
+	}
+
+	private String headAndTail(String text) {
+		int budget = limit - separatorSize();
+		if (budget < 2) {
+			// No room for a separator and both pieces
+			return text.substring(0, headEnd(text, 0, text.length(), limit));
+		}
+		int headBudget = (budget + 1) / 2;
+		int headEnd = headEnd(text, 0, text.length(), headBudget);
+		int tailStart = tailStart(text, headEnd, text.length(), budget - headBudget);
+		if (tailStart >= text.length()) {
+			return text.substring(0, headEnd);
+		}
+		return text.substring(0, headEnd) + separator + text.substring(tailStart);
+	}
+
+	private String sample(String text) {
+		List<int[]> paragraphs = split(text, paragraphBreak);
+		if (paragraphs.size() < 2) {
+			paragraphs = split(text, lineBreak);
+		}
+		if (paragraphs.size() < 2) {
+			return headAndTail(text);
+		}
+		int n = paragraphs.size();
+		long total = 0;
+		for (int[] p: paragraphs) {
+			total += size(text, p[0], p[1]) + separatorSize();
+		}
+		// Number of paragraphs that fit on average, taken at even intervals
+		int k = (int) Math.max(1, Math.min(n, (long) n * limit / Math.max(1, total)));
+		StringBuilder result = new StringBuilder();
+		int remaining = limit;
+		for (int j = 0; j < k; j++) {
+			int[] p = paragraphs.get((int) ((long) j * n / k));
+			int available = result.length() > 0 ? remaining - separatorSize() : remaining;
+			if (available <= 0) break;
+			int size = size(text, p[0], p[1]);
+			int end = size <= available ? p[1] : headEnd(text, p[0], p[1], available);
+			if (end <= p[0]) break;
+			if (result.length() > 0) {
+				result.append(separator);
+				remaining -= separatorSize();
+			}
+			result.append(text, p[0], end);
+			remaining -= Math.min(size, available);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Splits the text into non-empty segments, as start/end offsets.
+	 */
+	private static List<int[]> split(String text, Pattern delimiter) {
+		List<int[]> result = new ArrayList<int[]>();
+		Matcher m = delimiter.matcher(text);
+		int start = 0;
+		while (m.find()) {
+			if (!text.substring(start, m.start()).trim().isEmpty()) {
+				result.add(new int[]{start, m.start()});
+			}
+			start = m.end();
+		}
+		if (!text.substring(start).trim().isEmpty()) {
+			result.add(new int[]{start, text.length()});
+		}
+		return result;
+	}
+
+	/**
+	 * The size of the separator; whitespace doesn't count as tokens
+	 */
+	private int separatorSize() {
+		return size(separator, 0, separator.length());
+	}
+
+	private int size(String text, int from, int to) {
+		if (unit == Unit.CHARS) return to - from;
+		int count = 0;
+		boolean inToken = false;
+		for (int i = from; i < to; i++) {
+			boolean whitespace = Character.isWhitespace(text.charAt(i));
+			if (!whitespace && !inToken) count++;
+			inToken = !whitespace;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the end offset of the longest prefix of text[from, to)
+	 * that fits into the budget, avoiding breaking words if possible.
+	 */
+	private int headEnd(String text, int from, int to, int budget) {
+		if (unit == Unit.CHARS) {
+			int end = Math.min(to, from + budget);
+			if (end == to) return end;
+			for (int i = end; i > from + budget / 2; i--) {
+				if (Character.isWhitespace(text.charAt(i))) return i;
+			}
+			return end;
+		}
+		int count = 0;
+		boolean inToken = false;
+		for (int i = from; i < to; i++) {
+			boolean whitespace = Character.isWhitespace(text.charAt(i));
+			if (!whitespace && !inToken) count++;
+			if (whitespace && inToken && count == budget) return i;
+			inToken = !whitespace;
+		}
+		return to;
+	}
+
+	/**
+	 * Returns the start offset of the longest suffix of text[from, to)
+	 * that fits into the budget, avoiding breaking words if possible.
+	 */
+	private int tailStart(String text, int from, int to, int budget) {
+		if (budget <= 0) return to;
+		if (unit == Unit.CHARS) {
+			int start = Math.max(from, to - budget);
+			if (start == from) return start;
+			for (int i = start; i < to - budget / 2; i++) {
+				if (Character.isWhitespace(text.charAt(i - 1))) return i;
+			}
+			return start;
+		}
+		int count = 0;
+		boolean inToken = false;
+		for (int i = to - 1; i >= from; i--) {
+			boolean whitespace = Character.isWhitespace(text.charAt(i));
+			if (!whitespace && !inToken) count++;
+			if (whitespace && inToken && count == budget) return i + 1;
+			inToken = !whitespace;
+		}
+		return from;
+	}
+
+	@Override
+	public String toString() {
+		return limit + " " + EnumNames.toString(unit) + ", " + EnumNames.toString(strategy);
+	}
+}
@@ -0,0 +1,164 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.entopix.maui.util.Topic;
+
+/**
+ * Splits long texts into overlapping sections that can be processed
+ * independently, and merges the topics found in the sections into a
+ * single ranked list for the whole text.
+ */
+public class TextSections {
+
+	/**
+	 * Texts are not split into sections shorter than this, in characters,
+	 * as the overhead of a Maui call would outweigh the gain.
+	 */
+	public final static int minSectionLength = 10000;
+
+	/**
+	 * Number of characters by which neighbouring sections overlap, so that
+	 * phrases at section boundaries are seen whole by at least one section.
+	 */
+	public final static int overlap = 500;
+
+	/**
+	 * @param maxSections Maximum number of sections
+	 * @return Sections of roughly equal length that together cover the text; just the text if it is too short to split
+	 */
+	public static List<String> split(String text, int maxSections) {
+		int count = (int) Math.min(maxSections, (text.length() + minSectionLength - 1L) / minSectionLength);
+		if (count <= 1) return Collections.singletonList(text);
+		int length = (text.length() + count - 1) / count;
+		List<String> result = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			int start = i == 0 ? 0 : wordStart(text, i * length - overlap);
+			int end = i == count - 1 ? text.length() : wordEnd(text, Math.min(text.length(), (i + 1) * length + overlap));
+			result.add(text.substring(start, end));
+		}
+		return result;
+	}
+
+	private static int wordStart(String text, int pos) {
+		int limit = Math.min(text.length(), pos + overlap);
+		for (int i = pos; i < limit; i++) {
+			if (Character.isWhitespace(text.charAt(i - 1))) return i;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return The last {@link #overlap} characters of the text, starting at a word boundary if possible
+	 */
+	public static String tail(String text) {
+		if (text.length() <= overlap) return text;
+		return text.substring(wordStart(text, text.length() - overlap));
+	}
+
+	private static int wordEnd(String text, int pos) {
+		int limit = Math.max(1, pos - overlap);
+		for (int i = pos; i > limit; i--) {
+			if (i == text.length() || Character.isWhitespace(text.charAt(i))) return i;
+		}
+		return pos;
+	}
+
+	/**
+	 * Merges the topics of several sections of about the same length. A
+	 * topic's probability is its average probability over all sections,
+	 * counting 0 for sections it was not found in, so a topic found
+	 * throughout the text ranks above one that is strong in one section
+	 * only. Topics with equal probability are ranked by the number of
+	 * sections they were found in.
+	 *
+	 * @param maxTopics Maximum number of topics to return
+	 */
+	public static List<Topic> mergeTopics(List<? extends List<Topic>> sectionTopics, int maxTopics) {
+		TopicMerger merger = new TopicMerger();
+		for (List<Topic> topics: sectionTopics) {
+			merger.add(topics);
+		}
+		return merger.getTopics(maxTopics);
+	}
+
+	/**
+	 * Merges the topics of sections as they are added, in the same way
+	 * as {@link TextSections#mergeTopics(List, int)}. Sections can be
+	 * given weights, such as their lengths, and the average is then
+	 * weighted accordingly. Not thread-safe.
+	 */
+	public static class TopicMerger {
+		private final Map<String, MergedTopic> merged = new LinkedHashMap<String, MergedTopic>();
+		private int sectionCount = 0;
+		private double totalWeight = 0;
+
+		public void add(List<Topic> topics) {
+			add(topics, 1);
+		}
+
+		/**
+		 * @param weight The section's weight, greater than 0
+		 */
+		public void add(List<Topic> topics, double weight) {
+			sectionCount++;
+			totalWeight += weight;
+			for (Topic topic: topics) {
+				MergedTopic m = merged.get(topic.getId());
+				if (m == null) {
+					m = new MergedTopic(topic);
+					merged.put(topic.getId(), m);
+				}
+				m.sections++;
+				m.evidence += weight * topic.getProbability();
+			}
+		}
+
+		/**
+		 * Number of sections added so far.
+		 */
+		public int getSectionCount() {
+			return sectionCount;
+		}
+
+		/**
+		 * Number of distinct topics found in all sections so far.
+		 */
+		public int getTopicCount() {
+			return merged.size();
+		}
+
+		/**
+		 * @param maxTopics Maximum number of topics to return
+		 */
+		public List<Topic> getTopics(int maxTopics) {
+			List<MergedTopic> ranked = new ArrayList<MergedTopic>(merged.values());
+			Collections.sort(ranked, (a, b) -> a.evidence != b.evidence
+					? Double.compare(b.evidence, a.evidence)
+					: Integer.compare(b.sections, a.sections));
+			List<Topic> result = new ArrayList<Topic>(Math.min(maxTopics, ranked.size()));
+			for (MergedTopic m: ranked) {
+				if (result.size() >= maxTopics) break;
+				result.add(new Topic(m.title, m.id, m.evidence / totalWeight));
+			}
+			return result;
+		}
+	}
+
+	private static class MergedTopic {
+		final String id;
+		final String title;
+		// Sum of the section weights times the topic's probability in the section
+		double evidence = 0;
+		int sections = 0;
+
+		MergedTopic(Topic topic) {
+			this.id = topic.getId();
+			this.title = topic.getTitle();
+		}
+	}
+}
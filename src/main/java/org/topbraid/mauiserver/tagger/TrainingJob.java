@@ -5,12 +5,15 @@ import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.topbraid.mauiserver.MauiServerException;
 
 import com.entopix.maui.filters.MauiFilter;
 import com.entopix.maui.filters.MauiFilter.MauiFilterException;
 import com.entopix.maui.main.MauiModelBuilder;
 import com.entopix.maui.util.MauiDocument;
 import com.entopix.maui.vocab.Vocabulary;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
  * A training job that can be executed asynchronously on its own thread.
@@ -19,6 +22,9 @@ import com.entopix.maui.vocab.Vocabulary;
  */
 public class TrainingJob implements AsyncJob {
 	private static final Logger log = LoggerFactory.getLogger(TrainingJob.class);
+	private static final int verificationInstances = 10000;
+	private static final int compactionSampleDocuments = 10;
+	private static final int warmupSampleDocuments = 20;
 	
 	private final Tagger tagger;
 	private final List<TrainingDocument> corpus;
@@ -34,12 +40,74 @@ public class TrainingJob implements AsyncJob {
 	
 	public void run(JobReport report) throws MauiFilterException {
 		log.debug("Training started");
+		report.logFeatureProfile(tagger.getConfiguration().getEffectiveFeatureProfile().toJSON());
 		MauiFilter result = doTrainModel();
 		if (Thread.currentThread().isInterrupted()) return;
-		tagger.setMauiModel(result);
+		if (tagger.getConfiguration().isCompileClassifier()) {
+			report.logCompiledClassifier(compileClassifier(result));
+		}
+		if (tagger.getConfiguration().isCompactModel()) {
+			ObjectNode compaction = JsonNodeFactory.instance.objectNode();
+			result = createCompactor().compact(result, compaction);
+			report.logCompaction(compaction);
+		}
+		if (Thread.currentThread().isInterrupted()) return;
+		tagger.setWarmupSample(getWarmupSample());
+		if (tagger.setTrainedModel(result)) {
+			report.logCandidate();
+		}
 		log.debug("Training stopped");
 	}
 	
+	/**
+	 * Checks that the model's classifier can be compiled and produces the
+	 * same results. The model keeps its original classifier; it is
+	 * compiled again whenever the model is loaded, so that the stored
+	 * model doesn't carry both forms.
+	 */
+	private ObjectNode compileClassifier(MauiFilter model) {
+		ObjectNode outcome;
+		long start = System.currentTimeMillis();
+		try {
+			CompiledClassifier compiled = CompiledClassifier.compile(model);
+			int verified = compiled.verify(verificationInstances);
+			outcome = compiled.toJSON();
+			outcome.put("compiled", true);
+			outcome.put("verified_instances", verified);
+			log.info("Compiled classifier: " + compiled.getTreeCount() + " trees, " +
+					compiled.getNodeCount() + " nodes, verified on " + verified + " instances");
+		} catch (MauiServerException ex) {
+			log.warn("Could not compile classifier, using original: " + ex.getMessage());
+			outcome = JsonNodeFactory.instance.objectNode();
+			outcome.put("compiled", false);
+			outcome.put("error_message", ex.getMessage());
+		}
+		outcome.put("runtime_millis", System.currentTimeMillis() - start);
+		return outcome;
+	}
+	
+	private ModelCompactor createCompactor() {
+		List<String> samples = new ArrayList<String>();
+		for (TrainingDocument doc: corpus) {
+			if (samples.size() >= compactionSampleDocuments) break;
+			samples.add(doc.getText());
+		}
+		return new ModelCompactor(tagger.getVocabularyMaui(), samples,
+				tagger.getConfiguration().getMaxTopicsPerDocument());
+	}
+	
+	/**
+	 * Documents spread evenly over the corpus, kept for warming up the model after it is loaded.
+	 */
+	private List<String> getWarmupSample() {
+		List<String> samples = new ArrayList<String>();
+		int count = Math.min(warmupSampleDocuments, corpus.size());
+		for (int i = 0; i < count; i++) {
+			samples.add(corpus.get((int) ((long) i * corpus.size() / count)).getText());
+		}
+		return samples;
+	}
+	
 	public MauiFilter doTrainModel() throws MauiFilterException {
 		List<MauiDocument> mauiDocs = new ArrayList<MauiDocument>(corpus.size());
 		for (TrainingDocument doc: corpus) {
@@ -51,16 +119,10 @@ public class TrainingJob implements AsyncJob {
 	private MauiModelBuilder createModelBuilder() {
 		MauiModelBuilder modelBuilder = new MauiModelBuilder();
 
-		// Set features
-		modelBuilder.setBasicFeatures(true);
-		modelBuilder.setKeyphrasenessFeature(true);
-		modelBuilder.setFrequencyFeatures(true);
-		modelBuilder.setPositionsFeatures(true);
-		modelBuilder.setLengthFeature(true);
-		modelBuilder.setThesaurusFeatures(true);
-		
-		// change to 1 for short documents
-//		modelBuilder.minNumOccur = 2;
+		// Set features and candidate settings
+		FeatureProfile profile = tagger.getConfiguration().getEffectiveFeatureProfile();
+		profile.applyTo(modelBuilder);
+		log.info("Using feature profile: " + profile);
 
 		// Language selection stuff
 		modelBuilder.documentLanguage = tagger.getConfiguration().getEffectiveLang();
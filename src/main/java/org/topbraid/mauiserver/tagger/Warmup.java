@@ -0,0 +1,120 @@
+package org.topbraid.mauiserver.tagger;
+
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.entopix.maui.main.MauiWrapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Runs sample documents through a newly created {@link MauiWrapperPool}
+ * before it serves requests, so that the first real requests don't pay
+ * for class loading, JIT compilation and lazily built Maui state. The
+ * sample is processed in rounds, spreading documents over all wrappers of
+ * the pool, until the time per round stabilizes or the time limit is hit.
+ */
+public class Warmup {
+	private final static Logger log = LoggerFactory.getLogger(Warmup.class);
+
+	private final static int minRounds = 3;
+	private final static int maxRounds = 50;
+	private final static double stableChange = 0.1;
+
+	private final List<String> texts;
+	private final int maxTopics;
+	private final TextBudget budget;
+	private final long maxMillis;
+	private final Date startTime = new Date();
+	private int rounds = 0;
+	private long firstRoundNanos = 0;
+	private long lastRoundNanos = 0;
+	private long runtimeMillis = 0;
+	private boolean stable = false;
+	private String errorMessage = null;
+
+	/**
+	 * @param texts The sample documents
+	 * @param budget Applied to each document, as for suggestions; may be <code>null</code>
+	 * @param maxMillis Time after which warmup ends even if latency has not stabilized
+	 */
+	public Warmup(List<String> texts, int maxTopics, TextBudget budget, long maxMillis) {
+		this.texts = texts;
+		this.maxTopics = maxTopics;
+		this.budget = budget;
+		this.maxMillis = maxMillis;
+	}
+
+	public void run(MauiWrapperPool pool) {
+		long start = System.nanoTime();
+		long deadline = start + maxMillis * 1000000;
+		try {
+			pool.prestart();
+			long previous = 0;
+			int stableRounds = 0;
+			while (rounds < maxRounds && System.nanoTime() < deadline) {
+				long roundStart = System.nanoTime();
+				for (String text: texts) {
+					extract(pool, text);
+				}
+				long roundNanos = System.nanoTime() - roundStart;
+				rounds++;
+				if (rounds == 1) firstRoundNanos = roundNanos;
+				lastRoundNanos = roundNanos;
+				if (previous > 0 && Math.abs(roundNanos - previous) <= previous * stableChange) {
+					stableRounds++;
+				} else {
+					stableRounds = 0;
+				}
+				previous = roundNanos;
+				if (rounds >= minRounds && stableRounds >= 2) {
+					stable = true;
+					break;
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			errorMessage = "Interrupted";
+		} catch (Exception ex) {
+			log.warn("Error during warmup: " + ex.getMessage());
+			errorMessage = ex.getMessage();
+		}
+		runtimeMillis = (System.nanoTime() - start) / 1000000;
+		log.info("Warmup with " + texts.size() + " documents took " + runtimeMillis + "ms in " + rounds + " rounds" +
+				(stable ? "" : ", latency did not stabilize"));
+	}
+
+	private void extract(MauiWrapperPool pool, String text) throws Exception {
+		if (budget != null) {
+			text = budget.apply(text);
+		}
+		MauiWrapper wrapper = pool.borrow();
+		try {
+			wrapper.extractTopicsFromText(text, maxTopics);
+		} finally {
+			pool.release(wrapper);
+		}
+	}
+
+	public long getRuntimeMillis() {
+		return runtimeMillis;
+	}
+
+	public ObjectNode toJSON() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("start_time", JobReport.formatDate(startTime));
+		result.put("documents", texts.size());
+		result.put("rounds", rounds);
+		result.put("runtime_millis", runtimeMillis);
+		result.put("first_round_millis", firstRoundNanos / 1e6);
+		result.put("last_round_millis", lastRoundNanos / 1e6);
+		result.put("stable", stable);
+		if (errorMessage != null) {
+			result.put("error_message", errorMessage);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,101 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.topbraid.mauiserver.tagger.Bulkhead.Lane;
+import org.topbraid.mauiserver.tagger.Bulkhead.Ticket;
+
+public class TestBulkhead {
+
+	@Test
+	public void testRejectsWhenQueueIsFull() {
+		Bulkhead bulkhead = new Bulkhead(1, 0, 0, 1);
+		Ticket ticket = bulkhead.enter(Lane.INTERACTIVE, Deadline.none());
+		assertNotNull(ticket);
+		assertTrue(bulkhead.isFull());
+		assertNull(bulkhead.enter(Lane.INTERACTIVE, Deadline.none()));
+		assertEquals(1, bulkhead.getRejectedCount());
+		ticket.exit();
+		ticket.exit();
+		assertEquals(0, bulkhead.getInFlight());
+		assertNotNull(bulkhead.enter(Lane.INTERACTIVE, Deadline.none()));
+	}
+
+	@Test
+	public void testQueuedRequestWaitsForItsTurn() throws Exception {
+		Bulkhead bulkhead = new Bulkhead(1, 1, 0, 1);
+		Ticket ticket = bulkhead.enter(Lane.INTERACTIVE, Deadline.none());
+		assertNull(bulkhead.enter(Lane.INTERACTIVE, Deadline.afterMillis(20)));
+		AtomicReference<Ticket> entered = new AtomicReference<Ticket>();
+		Thread waiter = startWaiter(bulkhead, Lane.INTERACTIVE, entered, null);
+		assertTrue(bulkhead.isFull());
+		ticket.exit();
+		waiter.join(10000);
+		assertNotNull(entered.get());
+		assertEquals(1, bulkhead.getInFlight());
+		assertEquals(0, bulkhead.getQueued());
+	}
+
+	@Test
+	public void testBulkLeavesReservedPlacesToInteractive() {
+		Bulkhead bulkhead = new Bulkhead(4, 0, 0.5, 1);
+		assertNotNull(bulkhead.enter(Lane.BULK, Deadline.none()));
+		assertNotNull(bulkhead.enter(Lane.BULK, Deadline.none()));
+		assertNull(bulkhead.enter(Lane.BULK, Deadline.none()));
+		assertTrue(bulkhead.isFull(Lane.BULK));
+		assertNotNull(bulkhead.enter(Lane.INTERACTIVE, Deadline.none()));
+		assertNotNull(bulkhead.enter(Lane.INTERACTIVE, Deadline.none()));
+		assertEquals(2, bulkhead.getInFlight(Lane.BULK));
+		assertEquals(2, bulkhead.getInFlight(Lane.INTERACTIVE));
+	}
+
+	@Test
+	public void testWaitingLanesAreServedByWeight() throws Exception {
+		Bulkhead bulkhead = new Bulkhead(1, 10, 0, 3);
+		Ticket ticket = bulkhead.enter(Lane.INTERACTIVE, Deadline.none());
+		List<Lane> order = Collections.synchronizedList(new ArrayList<Lane>());
+		List<Thread> waiters = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			waiters.add(startWaiter(bulkhead, Lane.BULK, new AtomicReference<Ticket>(), order));
+			waiters.add(startWaiter(bulkhead, Lane.INTERACTIVE, new AtomicReference<Ticket>(), order));
+		}
+		ticket.exit();
+		for (Thread waiter: waiters) {
+			waiter.join(10000);
+		}
+		assertEquals(8, order.size());
+		// Interactive gets three turns for each turn of bulk, while both are waiting
+		assertEquals(1, Collections.frequency(order.subList(0, 4), Lane.BULK));
+	}
+
+	/**
+	 * Starts a thread that enters the bulkhead, and returns once it is queued.
+	 * If <code>order</code> is given, the thread records its lane there and leaves again.
+	 */
+	private Thread startWaiter(Bulkhead bulkhead, Lane lane, AtomicReference<Ticket> entered, List<Lane> order) throws InterruptedException {
+		int queued = bulkhead.getQueued(lane);
+		Thread waiter = new Thread(() -> {
+			Ticket ticket = bulkhead.enter(lane, Deadline.afterMillis(10000));
+			entered.set(ticket);
+			if (order != null && ticket != null) {
+				order.add(lane);
+				ticket.exit();
+			}
+		});
+		waiter.start();
+		while (bulkhead.getQueued(lane) == queued) {
+			Thread.sleep(1);
+		}
+		return waiter;
+	}
+}
@@ -0,0 +1,63 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+import com.entopix.maui.stemmers.Stemmer;
+
+public class TestCachingStemmer {
+
+	@SuppressWarnings("serial")
+	public static class CountingStemmer extends Stemmer {
+		int calls = 0;
+
+		@Override
+		public String stem(String token) {
+			calls++;
+			return token.endsWith("s") ? token.substring(0, token.length() - 1) : token;
+		}
+	}
+
+	@Test
+	public void testRepeatedTokensAreCached() {
+		CountingStemmer counting = new CountingStemmer();
+		CachingStemmer stemmer = new CachingStemmer(counting, 100);
+		assertEquals("tree", stemmer.stem("trees"));
+		assertEquals("tree", stemmer.stem("trees"));
+		assertEquals("tree", stemmer.stem("tree"));
+		assertEquals(2, counting.calls);
+		assertEquals(1, stemmer.toJSON().get("hits").asInt());
+		assertEquals(2, stemmer.toJSON().get("misses").asInt());
+	}
+
+	@Test
+	public void testCacheIsBounded() {
+		CachingStemmer stemmer = new CachingStemmer(new CountingStemmer(), 10);
+		for (int i = 0; i < 1000; i++) {
+			stemmer.stem("token" + i);
+		}
+		assertTrue(stemmer.toJSON().get("entries").asInt() <= 10);
+	}
+
+	@Test
+	public void testSerializesWrappedStemmer() throws Exception {
+		CachingStemmer shared = LanguageProcessors.getStemmer(CountingStemmer.class.getName());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(shared);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			Object copy = in.readObject();
+			assertTrue(copy instanceof CountingStemmer);
+		}
+		assertFalse(new String(bytes.toByteArray(), "ISO-8859-1").contains(CachingStemmer.class.getName()));
+	}
+}
@@ -0,0 +1,90 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.meta.Bagging;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+public class TestCompiledClassifier {
+	private final static int numAttributes = 4;
+
+	@Test
+	public void testJ48IsBitIdentical() throws Exception {
+		Instances data = createData(new Random(1), 300);
+		J48 tree = new J48();
+		tree.buildClassifier(data);
+		assertBitIdentical(tree, data, 1);
+	}
+
+	@Test
+	public void testBaggedJ48IsBitIdentical() throws Exception {
+		Instances data = createData(new Random(2), 300);
+		Bagging bagging = new Bagging();
+		bagging.setClassifier(new J48());
+		bagging.setNumIterations(5);
+		bagging.setSeed(3);
+		bagging.buildClassifier(data);
+		assertBitIdentical(bagging, data, 5);
+	}
+
+	private static void assertBitIdentical(Classifier original, Instances header, int trees) throws Exception {
+		CompiledClassifier compiled = CompiledClassifier.compile(original);
+		assertEquals(trees, compiled.getTreeCount());
+		assertTrue(compiled.getLeafCount() > trees);
+		assertTrue(compiled.verify(1000) >= 1000);
+		Random random = new Random(4);
+		for (int n = 0; n < 2000; n++) {
+			double[] values = new double[numAttributes + 1];
+			for (int i = 0; i < numAttributes; i++) {
+				// Some missing values, which the compiled classifier passes on to the original
+				values[i] = random.nextInt(50) == 0 ? Double.NaN : random.nextDouble();
+			}
+			values[numAttributes] = Double.NaN;
+			Instance instance = new DenseInstance(1.0, values);
+			instance.setDataset(header);
+			double[] expected = original.distributionForInstance(instance);
+			double[] actual = compiled.distributionForInstance(instance);
+			assertEquals(expected.length, actual.length);
+			for (int c = 0; c < expected.length; c++) {
+				assertEquals(Arrays.toString(values),
+						Double.doubleToRawLongBits(expected[c]), Double.doubleToRawLongBits(actual[c]));
+			}
+		}
+	}
+
+	/**
+	 * Numeric attributes in [0, 1); the class depends on two of them, with some noise.
+	 */
+	private static Instances createData(Random random, int size) {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < numAttributes; i++) {
+			attributes.add(new Attribute("a" + i));
+		}
+		attributes.add(new Attribute("class", Arrays.asList("no", "yes")));
+		Instances data = new Instances("test", attributes, size);
+		data.setClassIndex(numAttributes);
+		for (int n = 0; n < size; n++) {
+			double[] values = new double[numAttributes + 1];
+			for (int i = 0; i < numAttributes; i++) {
+				values[i] = random.nextDouble();
+			}
+			boolean yes = values[0] + values[1] * values[1] > 0.8;
+			if (random.nextInt(10) == 0) yes = !yes;
+			values[numAttributes] = yes ? 1 : 0;
+			data.add(new DenseInstance(1.0, values));
+		}
+		return data;
+	}
+}
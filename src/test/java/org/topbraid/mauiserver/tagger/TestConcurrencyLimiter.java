@@ -0,0 +1,48 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestConcurrencyLimiter {
+
+	@Test
+	public void testRejectsOverLimit() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10);
+		ConcurrencyLimiter.Permit first = limiter.tryAcquire();
+		assertNotNull(first);
+		assertNotNull(limiter.tryAcquire());
+		assertNull(limiter.tryAcquire());
+		assertEquals(1, limiter.getRejectedCount());
+		first.releaseIgnored();
+		first.releaseIgnored();
+		assertEquals(1, limiter.getInFlight());
+		assertNotNull(limiter.tryAcquire());
+	}
+
+	@Test
+	public void testGrowsWhileLatencyIsSteadyAndShrinksWhenItRises() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 100);
+		for (int i = 0; i < 200; i++) {
+			limiter.onSample(10000000, limiter.getLimit());
+		}
+		int grown = limiter.getLimit();
+		assertTrue("limit should grow, is " + grown, grown > 4);
+		for (int i = 0; i < 200; i++) {
+			limiter.onSample(100000000, limiter.getLimit());
+		}
+		assertTrue("limit should shrink, is " + limiter.getLimit(), limiter.getLimit() < grown);
+	}
+
+	@Test
+	public void testDoesNotGrowWhenUnused() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 100);
+		for (int i = 0; i < 200; i++) {
+			limiter.onSample(10000000, 1);
+		}
+		assertEquals(8, limiter.getLimit());
+	}
+}
@@ -0,0 +1,67 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class TestDeadline {
+
+	@Test
+	public void testNoDeadlineNeverExpires() {
+		Deadline deadline = Deadline.none();
+		assertFalse(deadline.isExpired());
+		assertEquals(Long.MAX_VALUE, deadline.getRemainingNanos());
+		deadline.check();
+		assertEquals("done", deadline.await(CompletableFuture.completedFuture("done")));
+	}
+
+	@Test
+	public void testAwaitStopsAtDeadline() {
+		Deadline deadline = Deadline.afterMillis(20);
+		try {
+			deadline.await(new CompletableFuture<String>());
+		} catch (DeadlineExceededException ex) {
+			assertTrue(deadline.isExpired());
+			return;
+		}
+		throw new AssertionError("Expected DeadlineExceededException");
+	}
+
+	@Test
+	public void testAwaitWithoutDeadlineStopsWhenCancelled() throws InterruptedException {
+		Deadline deadline = Deadline.none();
+		Thread canceller = new Thread(() -> {
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException ex) {
+				// Cancel right away
+			}
+			deadline.cancel();
+		});
+		canceller.start();
+		try {
+			deadline.await(new CompletableFuture<String>());
+		} catch (RequestCancelledException ex) {
+			canceller.join();
+			return;
+		}
+		throw new AssertionError("Expected RequestCancelledException");
+	}
+
+	@Test
+	public void testCancelTakesPrecedence() {
+		Deadline deadline = Deadline.afterMillis(0);
+		assertTrue(deadline.isExpired());
+		deadline.cancel();
+		try {
+			deadline.check();
+		} catch (RequestCancelledException ex) {
+			return;
+		}
+		throw new AssertionError("Expected RequestCancelledException");
+	}
+}
@@ -0,0 +1,48 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import org.topbraid.mauiserver.tagger.FeatureProfile.Feature;
+import org.topbraid.mauiserver.tagger.FeatureProfile.Name;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class TestFeatureProfile {
+
+	@Test
+	public void testDefaultIsFullProfile() {
+		FeatureProfile profile = TaggerConfiguration.createWithDefaults("test").getEffectiveFeatureProfile();
+		assertEquals(Name.FULL, profile.getName());
+		assertFalse(profile.isCustomized());
+		assertEquals(EnumSet.allOf(Feature.class), profile.getFeatures());
+		assertEquals(2, profile.getMinNumOccur());
+		assertEquals(1, profile.getMinPhraseLength());
+		assertEquals(5, profile.getMaxPhraseLength());
+	}
+
+	@Test
+	public void testExplicitSettingsOverrideProfile() {
+		ObjectNode json = JsonNodeFactory.instance.objectNode();
+		json.put("feature_profile", "fast");
+		json.putArray("features").add("basic").add("positions");
+		json.put("min_num_occur", 1);
+		json.put("min_phrase_length", 2);
+		TaggerConfiguration config = TaggerConfiguration.createWithDefaults("test");
+		config.updateFromJSON(json);
+		FeatureProfile profile = config.copy().getEffectiveFeatureProfile();
+		assertEquals(Name.FAST, profile.getName());
+		assertTrue(profile.isCustomized());
+		assertEquals(EnumSet.of(Feature.BASIC, Feature.POSITIONS), profile.getFeatures());
+		assertEquals(1, profile.getMinNumOccur());
+		assertEquals(2, profile.getMinPhraseLength());
+		assertEquals(3, profile.getMaxPhraseLength());
+		assertTrue(profile.hasSameCandidateSettings(profile.override(EnumSet.noneOf(Feature.class), null, null, null)));
+	}
+}
@@ -0,0 +1,69 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.junit.Test;
+
+import com.entopix.maui.stemmers.Stemmer;
+import com.entopix.maui.stopwords.Stopwords;
+import com.entopix.maui.util.Topic;
+
+public class TestPhraseDictionary {
+
+	@SuppressWarnings("serial")
+	private final Stemmer stemmer = new Stemmer() {
+		@Override
+		public String stem(String word) {
+			return word.endsWith("s") ? word.substring(0, word.length() - 1) : word;
+		}
+		@Override
+		public String stemString(String text) {
+			return text;
+		}
+	};
+
+	@SuppressWarnings("serial")
+	private final Stopwords stopwords = new Stopwords() {
+		@Override
+		public boolean isStopword(String word) {
+			return "the".equals(word) || "of".equals(word);
+		}
+	};
+
+	private PhraseDictionary createDictionary() {
+		Model model = ModelFactory.createDefaultModel();
+		model.read(new StringReader(
+				"@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n" +
+				"<http://ex/liver> skos:prefLabel \"Liver\"@en ; skos:altLabel \"Hepar\"@en .\n" +
+				"<http://ex/liverDisease> skos:prefLabel \"Liver Diseases\"@en ; skos:prefLabel \"Leberkrankheiten\"@de .\n" +
+				"<http://ex/disease> skos:prefLabel \"Disease\" .\n"), null, "TURTLE");
+		return new PhraseDictionary(model, "en", stemmer, stopwords);
+	}
+
+	@Test
+	public void testLongestMatchWins() {
+		List<Topic> topics = createDictionary().match(
+				"Diseases of the liver. The liver disease affects the hepar.", stemmer, stopwords, 10);
+		assertEquals(3, topics.size());
+		assertEquals("http://ex/liver", topics.get(0).getId());
+		assertEquals("Liver", topics.get(0).getTitle());
+		assertEquals(1.0, topics.get(0).getProbability(), 0.0);
+		assertEquals("http://ex/disease", topics.get(1).getId());
+		assertEquals(0.5, topics.get(1).getProbability(), 0.0);
+		assertEquals("http://ex/liverDisease", topics.get(2).getId());
+	}
+
+	@Test
+	public void testOtherLanguagesAndMaxTopics() {
+		PhraseDictionary dictionary = createDictionary();
+		assertEquals(4, dictionary.getLabelCount());
+		assertTrue(dictionary.match("Leberkrankheiten", stemmer, stopwords, 10).isEmpty());
+		assertEquals(1, dictionary.match("liver disease liver", stemmer, stopwords, 1).size());
+	}
+}
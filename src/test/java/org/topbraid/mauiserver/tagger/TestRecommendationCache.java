@@ -0,0 +1,53 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.entopix.maui.util.Topic;
+
+public class TestRecommendationCache {
+
+	private final RecommendationResult result = new RecommendationResult(Collections.<Topic>emptyList());
+
+	@Test
+	public void testHitAndMiss() {
+		RecommendationCache cache = new RecommendationCache(10000);
+		RecommendationCache.Stats stats = new RecommendationCache.Stats();
+		assertNull(cache.get(RecommendationCache.createKey("t", 0, "text"), stats));
+		cache.put(RecommendationCache.createKey("t", 0, "text"), result, stats);
+		assertSame(result, cache.get(RecommendationCache.createKey("t", 0, "text"), stats));
+		assertNull(cache.get(RecommendationCache.createKey("t", 0, "other text"), stats));
+		assertNull(cache.get(RecommendationCache.createKey("t", 1, "text"), stats));
+		assertNull(cache.get(RecommendationCache.createKey("u", 0, "text"), stats));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		// Room for two empty results
+		RecommendationCache cache = new RecommendationCache(500);
+		RecommendationCache.Stats stats = new RecommendationCache.Stats();
+		cache.put(RecommendationCache.createKey("t", 0, "a"), result, stats);
+		cache.put(RecommendationCache.createKey("t", 0, "b"), result, stats);
+		assertNotNull(cache.get(RecommendationCache.createKey("t", 0, "a"), stats));
+		cache.put(RecommendationCache.createKey("t", 0, "c"), result, stats);
+		assertNotNull(cache.get(RecommendationCache.createKey("t", 0, "a"), stats));
+		assertNull(cache.get(RecommendationCache.createKey("t", 0, "b"), stats));
+		assertNotNull(cache.get(RecommendationCache.createKey("t", 0, "c"), stats));
+	}
+
+	@Test
+	public void testInvalidate() {
+		RecommendationCache cache = new RecommendationCache(10000);
+		RecommendationCache.Stats stats = new RecommendationCache.Stats();
+		cache.put(RecommendationCache.createKey("t", 0, "a"), result, stats);
+		cache.put(RecommendationCache.createKey("u", 0, "a"), result, stats);
+		cache.invalidate("t");
+		assertNull(cache.get(RecommendationCache.createKey("t", 0, "a"), stats));
+		assertNotNull(cache.get(RecommendationCache.createKey("u", 0, "a"), stats));
+	}
+}
@@ -0,0 +1,82 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.entopix.maui.util.Topic;
+
+public class TestSuggestCoalescer {
+
+	private final RecommendationResult result = new RecommendationResult(Collections.<Topic>emptyList());
+	private final RecommendationCache.Key key = RecommendationCache.createKey("t", 0, "text");
+
+	@Test
+	public void testFollowerTakesOverAbandonedComputationAndIsCountedOnce() throws Exception {
+		SuggestCoalescer coalescer = new SuggestCoalescer();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch giveUp = new CountDownLatch(1);
+		CompletableFuture<RecommendationResult> leader = CompletableFuture.supplyAsync(() ->
+				coalescer.run(key, Deadline.none(), () -> {
+					started.countDown();
+					try {
+						giveUp.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+					throw new DeadlineExceededException();
+				}));
+		started.await();
+		CompletableFuture<RecommendationResult> follower = CompletableFuture.supplyAsync(() ->
+				coalescer.run(key, Deadline.none(), () -> result));
+		Thread.sleep(50);
+		giveUp.countDown();
+		assertSame(result, follower.get(5, TimeUnit.SECONDS));
+		try {
+			leader.get(5, TimeUnit.SECONDS);
+			fail("Expected DeadlineExceededException");
+		} catch (ExecutionException ex) {
+			assertEquals(DeadlineExceededException.class, ex.getCause().getClass());
+		}
+		assertEquals(1, coalescer.toJSON().get("coalesced").asInt());
+		assertEquals(0, coalescer.toJSON().get("in_flight").asInt());
+	}
+
+	@Test
+	public void testFollowerWithoutDeadlineCanBeCancelled() throws Exception {
+		SuggestCoalescer coalescer = new SuggestCoalescer();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		CompletableFuture.runAsync(() -> coalescer.run(key, Deadline.none(), () -> {
+			started.countDown();
+			try {
+				finish.await();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return result;
+		}));
+		started.await();
+		Deadline deadline = Deadline.none();
+		CompletableFuture<RecommendationResult> follower = CompletableFuture.supplyAsync(() ->
+				coalescer.run(key, deadline, () -> result));
+		Thread.sleep(50);
+		deadline.cancel();
+		try {
+			follower.get(5, TimeUnit.SECONDS);
+			fail("Expected RequestCancelledException");
+		} catch (ExecutionException ex) {
+			assertEquals(RequestCancelledException.class, ex.getCause().getClass());
+		} finally {
+			finish.countDown();
+		}
+	}
+}
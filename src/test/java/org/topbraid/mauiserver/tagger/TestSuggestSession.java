@@ -0,0 +1,94 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.entopix.maui.util.Topic;
+
+public class TestSuggestSession {
+
+	@Test
+	public void testChunksAreProcessedWithContextAndMerged() {
+		List<String> seen = new ArrayList<String>();
+		SuggestSession session = new SuggestSession(false);
+		session.append("liver disease", text -> {
+			seen.add(text);
+			return Arrays.asList(new Topic("Liver", "liver", 0.5), new Topic("Disease", "disease", 0.2));
+		}, 10);
+		List<Topic> topics = session.append("more on disease", text -> {
+			seen.add(text);
+			return Arrays.asList(new Topic("Disease", "disease", 0.7));
+		}, 10);
+		assertEquals("liver disease", seen.get(0));
+		assertEquals("liver disease more on disease", seen.get(1));
+		assertEquals(2, topics.size());
+		assertEquals("disease", topics.get(0).getId());
+		// Averaged over the text, weighted by chunk length
+		assertEquals((0.2 * 13 + 0.7 * 15) / 28, topics.get(0).getProbability(), 1e-9);
+		assertEquals("liver", topics.get(1).getId());
+		assertEquals(0.5 * 13 / 28, topics.get(1).getProbability(), 1e-9);
+	}
+
+	@Test
+	public void testRecurringTopicsOutrankOneOffs() {
+		SuggestSession session = new SuggestSession(false);
+		for (int i = 0; i < 5; i++) {
+			session.append("a chunk of the transcript about budgets, number " + i,
+					text -> Arrays.asList(new Topic("Budget", "budget", 0.4)), 10);
+		}
+		List<Topic> topics = session.append("ok", text -> Arrays.asList(new Topic("Weather", "weather", 0.9)), 10);
+		assertEquals(2, topics.size());
+		assertEquals("budget", topics.get(0).getId());
+		assertEquals("weather", topics.get(1).getId());
+	}
+
+	@Test
+	public void testContextIsBounded() {
+		StringBuilder longChunk = new StringBuilder();
+		while (longChunk.length() < 10 * TextSections.overlap) {
+			longChunk.append("word ");
+		}
+		List<String> seen = new ArrayList<String>();
+		SuggestSession session = new SuggestSession(true);
+		session.append(longChunk.toString(), text -> new ArrayList<Topic>(), 10);
+		session.append("next", text -> {
+			seen.add(text);
+			return new ArrayList<Topic>();
+		}, 10);
+		assertTrue(seen.get(0).length() <= TextSections.overlap + " next".length());
+		assertTrue(seen.get(0).endsWith(" next"));
+	}
+
+	@Test
+	public void testSessionLimit() {
+		SuggestSessions sessions = new SuggestSessions(600, 2);
+		SuggestSession first = sessions.open(false);
+		assertNotNull(sessions.open(false));
+		assertNull(sessions.open(false));
+		assertEquals(1, sessions.getRejectedCount());
+		assertTrue(sessions.close(first.getId()));
+		assertNotNull(sessions.open(false));
+		assertEquals(2, sessions.size());
+	}
+
+	@Test
+	public void testExpiredSessionsMakeRoom() throws InterruptedException {
+		SuggestSessions sessions = new SuggestSessions(0, 2);
+		SuggestSession first = sessions.open(false);
+		sessions.open(false);
+		Thread.sleep(5);
+		assertNull(sessions.get(first.getId()));
+		assertEquals(1, sessions.getExpiredCount());
+		assertNotNull(sessions.open(false));
+		assertEquals(2, sessions.getExpiredCount());
+		assertEquals(1, sessions.size());
+	}
+}
@@ -0,0 +1,242 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.Test;
+import org.topbraid.mauiserver.MauiServerException;
+import org.topbraid.mauiserver.persistence.TaggerStore;
+
+import com.entopix.maui.filters.MauiFilter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class TestTaggerCollection {
+
+	@Test
+	public void testConcurrentCallersGetSameTagger() throws Exception {
+		File dir = Files.createTempDirectory("taggers").toFile();
+		TaggerCollection taggers = new TaggerCollection(dir.getAbsolutePath());
+		taggers.createTagger("a");
+		taggers.createTagger("b");
+		TaggerCollection fresh = new TaggerCollection(dir.getAbsolutePath());
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Tagger>> results = new ArrayList<Future<Tagger>>();
+			for (int i = 0; i < 32; i++) {
+				String id = i % 2 == 0 ? "a" : "b";
+				results.add(executor.submit(() -> {
+					start.await();
+					return fresh.getTagger(id);
+				}));
+			}
+			start.countDown();
+			for (int i = 0; i < results.size(); i++) {
+				Tagger tagger = results.get(i).get();
+				assertNotNull(tagger);
+				assertSame(results.get(i % 2).get(), tagger);
+				assertEquals(i % 2 == 0 ? "a" : "b", tagger.getId());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		fresh.deleteTagger("a");
+		assertNull(fresh.getTagger("a"));
+		assertNull(fresh.getTagger(null));
+		fresh.deleteTagger("b");
+		dir.delete();
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		File dir = createTaggers("a", "b", "c");
+		long bytes = getEstimatedBytes(dir, "a");
+		TaggerCollection taggers = new TaggerCollection(dir.getAbsolutePath(), bytes * 2 + bytes / 2);
+		load(taggers, "a");
+		load(taggers, "b");
+		assertLoaded(taggers, "a", "b");
+		load(taggers, "c");
+		assertLoaded(taggers, "b", "c");
+		assertFalse(isLoaded(taggers, "a"));
+		ObjectNode memory = taggers.getMemoryJSON();
+		assertEquals(bytes * 2, memory.get("estimated_bytes").asLong());
+		assertEquals(2, memory.get("loaded_taggers").asInt());
+		assertEquals(3, memory.get("loads").asLong());
+		assertEquals(1, memory.get("evictions").asLong());
+		// An unloaded tagger is loaded again when next used, evicting the next least recently used
+		load(taggers, "a");
+		assertLoaded(taggers, "c", "a");
+		assertFalse(isLoaded(taggers, "b"));
+		assertEquals(2, taggers.getMemoryJSON().get("evictions").asLong());
+	}
+
+	@Test
+	public void testSkipsPinnedAndBusyTaggers() throws Exception {
+		File dir = createTaggers("a", "b", "c", "d");
+		long bytes = getEstimatedBytes(dir, "a");
+		TaggerCollection taggers = new TaggerCollection(dir.getAbsolutePath(), bytes * 3 + bytes / 2);
+		TaggerConfiguration config = taggers.getTagger("a").getConfiguration().copy();
+		config.setPinned(true);
+		taggers.getTagger("a").setConfiguration(config);
+		load(taggers, "a");
+		load(taggers, "b");
+		load(taggers, "c");
+		Bulkhead.Ticket ticket = taggers.getTagger("b").getBulkhead().enter(Bulkhead.Lane.INTERACTIVE, Deadline.none());
+		assertNotNull(ticket);
+		try {
+			load(taggers, "d");
+		} finally {
+			ticket.exit();
+		}
+		// a is pinned and b is busy, so c goes although it was used more recently
+		assertLoaded(taggers, "a", "b", "d");
+		assertFalse(isLoaded(taggers, "c"));
+		assertEquals(1, taggers.getMemoryJSON().get("evictions").asLong());
+	}
+
+	@Test
+	public void testKeepsJustLoadedTaggerOverBudget() throws Exception {
+		File dir = createTaggers("a");
+		long bytes = getEstimatedBytes(dir, "a");
+		TaggerCollection taggers = new TaggerCollection(dir.getAbsolutePath(), bytes / 2);
+		load(taggers, "a");
+		// Over budget, with nothing that can be unloaded; only logs a warning
+		assertLoaded(taggers, "a");
+		ObjectNode memory = taggers.getMemoryJSON();
+		assertEquals(bytes / 2, memory.get("budget_bytes").asLong());
+		assertEquals(bytes, memory.get("estimated_bytes").asLong());
+		assertEquals(0, memory.get("evictions").asLong());
+	}
+
+	@Test
+	public void testCountsEveryCopyOfTheModel() throws Exception {
+		File dir = createTaggers("a");
+		Tagger tagger = new TaggerCollection(dir.getAbsolutePath()).getTagger("a");
+		TaggerConfiguration config = tagger.getConfiguration().copy();
+		config.setWrapperPoolSize(3);
+		tagger.setConfiguration(config);
+		tagger.setMauiModel(new MauiFilter());
+		long vocabularyBytes = tagger.getVocabularyFile().length();
+		long modelBytes = new TaggerStore(dir.getAbsolutePath()).getMauiModelFile("a").length();
+		assertTrue(modelBytes > 0);
+		// Three wrappers, plus the prototype they are copied from
+		TaggerCollection taggers = new TaggerCollection(dir.getAbsolutePath());
+		load(taggers, "a");
+		assertEquals(4, taggers.getTagger("a").getSnapshot().getWrapperPool().getModelCopies());
+		assertEquals(4 * (vocabularyBytes + 4 * modelBytes), taggers.getMemoryJSON().get("estimated_bytes").asLong());
+		// The estimate follows the pool when it is rebuilt
+		config = config.copy();
+		config.setWrapperPoolSize(1);
+		taggers.getTagger("a").setConfiguration(config);
+		assertEquals(1, taggers.getTagger("a").getSnapshot().getWrapperPool().getModelCopies());
+		assertEquals(4 * (vocabularyBytes + modelBytes), taggers.getTagger("a").getEstimatedBytes());
+	}
+
+	@Test
+	public void testKeepsLabelDictionaryAcrossConfigurationChanges() throws Exception {
+		File dir = createTaggers("a");
+		TaggerCollection taggers = new TaggerCollection(dir.getAbsolutePath());
+		Tagger tagger = taggers.getTagger("a");
+		long bytes = getEstimatedBytes(dir, "a");
+		assertEquals("http://example.org/concept1",
+				tagger.recommendTagsFromDictionary("About concept 1").getRecommendations().get(0));
+		PhraseDictionary dictionary = tagger.getSnapshot().getDictionaryIfBuilt();
+		assertNotNull(dictionary);
+		assertEquals(bytes + dictionary.getEstimatedBytes(), tagger.getEstimatedBytes());
+		// Settings that don't affect the dictionary
+		TaggerConfiguration config = tagger.getConfiguration().copy();
+		config.setProbabilityThreshold(0.5);
+		tagger.setConfiguration(config);
+		assertSame(dictionary, tagger.getSnapshot().getDictionaryIfBuilt());
+		// Once used, the dictionary is built along with the vocabulary
+		tagger.unload();
+		tagger.getSnapshot();
+		assertNotNull(tagger.getSnapshot().getDictionaryIfBuilt());
+		assertEquals(bytes + dictionary.getEstimatedBytes(), tagger.getEstimatedBytes());
+	}
+
+	@Test
+	public void testLoadsInBackground() throws Exception {
+		File dir = createTaggers("a");
+		Tagger tagger = new TaggerCollection(dir.getAbsolutePath()).getTagger("a");
+		assertFalse(tagger.loadInBackground());
+		// Waits for the load that is already in progress
+		assertTrue(tagger.getSnapshot().isLoaded());
+		assertFalse(tagger.isLoading());
+		assertTrue(tagger.loadInBackground());
+	}
+
+	/**
+	 * Creates taggers with identical vocabularies, in a new data directory
+	 */
+	private static File createTaggers(String... ids) throws Exception {
+		File dir = Files.createTempDirectory("taggers").toFile();
+		TaggerCollection taggers = new TaggerCollection(dir.getAbsolutePath());
+		for (String id: ids) {
+			Tagger tagger = taggers.createTagger(id);
+			Model vocabulary = ModelFactory.createDefaultModel();
+			for (int i = 0; i < 10; i++) {
+				vocabulary.createResource("http://example.org/concept" + i, SKOS.Concept)
+						.addProperty(SKOS.prefLabel, "Concept " + i);
+			}
+			tagger.setVocabulary(vocabulary, tagger.toMauiVocabulary(vocabulary));
+		}
+		return dir;
+	}
+
+	private static long getEstimatedBytes(File dir, String id) {
+		Tagger tagger = new TaggerCollection(dir.getAbsolutePath()).getTagger(id);
+		tagger.getSnapshot();
+		assertTrue(tagger.getEstimatedBytes() > 0);
+		return tagger.getEstimatedBytes();
+	}
+
+	private static void load(TaggerCollection taggers, String id) throws InterruptedException {
+		// Keep access times apart
+		Thread.sleep(5);
+		taggers.getTagger(id).getSnapshot();
+	}
+
+	private static boolean isLoaded(TaggerCollection taggers, String id) {
+		return taggers.getTagger(id).getSnapshotIfLoaded().isLoaded();
+	}
+
+	private static void assertLoaded(TaggerCollection taggers, String... ids) {
+		for (String id: ids) {
+			assertTrue("Tagger " + id + " should be loaded", isLoaded(taggers, id));
+		}
+	}
+
+	@Test
+	public void testReservedTaggerIds() throws Exception {
+		File dir = Files.createTempDirectory("taggers").toFile();
+		TaggerCollection taggers = new TaggerCollection(dir.getAbsolutePath());
+		assertFalse(taggers.isValidTaggerId("suggest"));
+		assertFalse(taggers.isValidTaggerId("classifier"));
+		assertTrue(taggers.isValidTaggerId("suggestions"));
+		try {
+			taggers.createTagger("suggest");
+			fail("Expected reserved tagger ID to be rejected");
+		} catch (MauiServerException ex) {
+			// Expected
+		}
+		dir.delete();
+	}
+}
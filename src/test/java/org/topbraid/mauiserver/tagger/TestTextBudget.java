@@ -0,0 +1,59 @@
+package org.topbraid.mauiserver.tagger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.topbraid.mauiserver.tagger.TextBudget.Strategy;
+import org.topbraid.mauiserver.tagger.TextBudget.Unit;
+
+public class TestTextBudget {
+
+	@Test
+	public void testTextWithinBudgetIsUnchanged() {
+		String text = "one two three";
+		assertSame(text, new TextBudget(13, Unit.CHARS, Strategy.HEAD).apply(text));
+		assertSame(text, new TextBudget(3, Unit.TOKENS, Strategy.SAMPLE).apply(text));
+	}
+
+	@Test
+	public void testHead() {
+		assertEquals("one two", new TextBudget(9, Unit.CHARS, Strategy.HEAD).apply("one two three"));
+		assertEquals("one  two", new TextBudget(2, Unit.TOKENS, Strategy.HEAD).apply("one  two three four"));
+	}
+
+	@Test
+	public void testHeadAndTail() {
+		assertEquals("one two\n\nfive six",
+				new TextBudget(4, Unit.TOKENS, Strategy.HEAD_TAIL).apply("one two three four five six"));
+	}
+
+	@Test
+	public void testHeadAndTailSeparatorCountsAgainstBudget() {
+		String text = "aaaa bbbb cccc dddd eeee ffff gggg";
+		for (int limit = 1; limit < text.length(); limit++) {
+			String result = new TextBudget(limit, Unit.CHARS, Strategy.HEAD_TAIL).apply(text);
+			assertTrue(result.length() <= limit);
+		}
+		assertEquals("aaaa\n\ngggg", new TextBudget(12, Unit.CHARS, Strategy.HEAD_TAIL).apply(text));
+	}
+
+	@Test
+	public void testSampleTakesEvenlySpacedParagraphs() {
+		String text = "p1 a b\n\np2 a b\n\np3 a b\n\np4 a b\n\np5 a b\n\np6 a b";
+		assertEquals("p1 a b\n\np3 a b\n\np5 a b", new TextBudget(9, Unit.TOKENS, Strategy.SAMPLE).apply(text));
+	}
+
+	@Test
+	public void testSampleStaysWithinBudget() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			text.append("Paragraph ").append(i).append(" with some words of varying length.\n\n");
+		}
+		String result = new TextBudget(500, Unit.CHARS, Strategy.SAMPLE).apply(text.toString());
+		assertTrue(result.length() <= 500);
+		assertTrue(result.startsWith("Paragraph 0 "));
+	}
+}